@@ -1,10 +1,7 @@
 package io.zrz.jgdb;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Common functionality between V9 and V10 databases.
@@ -16,29 +13,37 @@ import java.util.stream.Collectors;
 abstract class AbstractGeoDB implements GeoDB {
 
   /**
-   * The base path for the database.
+   * Where the files of the database are read from.
    */
 
-  protected final Path dir;
+  protected final GeoStore store;
 
   /**
    * All of the files in the database.
    */
 
-  protected List<Path> files;
+  protected List<String> files;
 
   /**
-   * tables that are currently open.
+   * tables that are currently open. guarded by this, so layers can be opened
+   * from multiple threads. reading an opened layer needs no locking.
    */
 
   private Map<Long, GeoTable> opened = new HashMap<>();
 
+  /**
+   * the number of times each open table has been handed out and not closed
+   * yet. guarded by this.
+   */
+
+  private Map<Long, Integer> users = new HashMap<>();
+
   /**
    * 
    */
 
-  AbstractGeoDB(final Path dir) {
-    this.dir = dir;
+  AbstractGeoDB(final GeoStore store) {
+    this.store = store;
   }
 
   /**
@@ -50,19 +55,27 @@ abstract class AbstractGeoDB implements GeoDB {
    */
 
   protected boolean tableExists(long tableId) {
-    return Files.exists(getTableFile(tableId, "gdbtable"));
+    return this.store.exists(getTableFile(tableId, "gdbtable"));
   }
 
   /**
-   * fetches the path to the specified table/extension.
+   * fetches the name of the file for the specified table/extension.
    * 
    * @param id
    * @param ext
    * @return
    */
 
-  Path getTableFile(final long id, final String ext) {
-    return this.dir.resolve(makeFileName(id, ext));
+  String getTableFile(final long id, final String ext) {
+    return makeFileName(id, ext);
+  }
+
+  /**
+   * opens a buffer over the given file in the store.
+   */
+
+  GeoBuffer openFile(final String name) throws IOException {
+    return this.store.open(name);
   }
 
   /**
@@ -86,7 +99,7 @@ abstract class AbstractGeoDB implements GeoDB {
   final void open() {
 
     try {
-      this.files = Files.list(this.dir).collect(Collectors.toList());
+      this.files = this.store.list();
     } catch (final IOException e) {
       throw new GeoDBException(e);
     }
@@ -98,9 +111,15 @@ abstract class AbstractGeoDB implements GeoDB {
 
   @Override
   public final void close() {
-    List<GeoTable> vals = new ArrayList<>(this.opened.values());
-    vals.forEach(GeoTable::close);
+    List<GeoTable> vals;
+    synchronized (this) {
+      vals = new ArrayList<>(this.opened.values());
+      this.opened.clear();
+      this.users.clear();
+    }
+    vals.stream().filter(Objects::nonNull).forEach(GeoTable::closeFiles);
     vals.clear();
+    this.store.close();
   }
 
   /**
@@ -124,23 +143,49 @@ abstract class AbstractGeoDB implements GeoDB {
     final GeoTable index = openTable(tableId);
     if (index.getVersion() != tableVersion) {
       index.close();
-      closed(tableId);
       throw new IllegalArgumentException(String.format("Unexpected Table Version: %d", index.getVersion()));
     }
     return index;
   }
 
-  protected GeoTable openTable(long tableId){
+  /**
+   * the open table, shared between everyone who asks for it. each must close
+   * it, and its files are only closed once they all have (or the database
+   * is).
+   */
+
+  protected synchronized GeoTable openTable(long tableId){
     if(this.opened.containsKey(tableId)){
+      this.users.computeIfPresent(tableId, (id, count) -> count + 1);
       return this.opened.get(tableId);
     }
     final GeoTable index = GeoTable.open(this, tableId);
     this.opened.put(tableId, index);
+    if (index != null) {
+      this.users.put(tableId, 1);
+    }
     return index;
   }
 
-  public void closed(long id) {
+  /**
+   * called when a table is closed, returning true if its files should be
+   * closed as nothing else is using it.
+   */
+
+  synchronized boolean release(GeoTable table) {
+    final long id = table.getTableId();
+    if (this.opened.get(id) != table) {
+      // never shared, or the database has been closed.
+      return true;
+    }
+    final int count = this.users.get(id) - 1;
+    if (count > 0) {
+      this.users.put(id, count);
+      return false;
+    }
+    this.users.remove(id);
     this.opened.remove(id);
+    return true;
   }
 
 }
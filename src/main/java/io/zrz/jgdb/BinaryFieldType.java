@@ -23,6 +23,11 @@ import lombok.Value;
     return data;
   }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return file.readBlobAt(pos);
+  }
+
   @Override
   public Object getDefaultValue() {
     return null;
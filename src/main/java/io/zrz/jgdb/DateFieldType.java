@@ -13,6 +13,23 @@ class DateFieldType implements FieldType {
 
   private static Instant EPOCH = Instant.parse("1899-12-30T00:00:00.00Z");
 
+  /**
+   * the seconds since 1970 of a date stored as days since 1899/12/30.
+   */
+
+  static long toEpochSecond(double days) {
+    return EPOCH.getEpochSecond() + (long) Math.ceil(days * (3600.0 * 24.0));
+  }
+
+  /**
+   * the milliseconds since 1970 of a date stored as days since 1899/12/30, to
+   * the nearest millisecond.
+   */
+
+  static long toEpochMilli(double days) {
+    return EPOCH.toEpochMilli() + Math.round(days * (3600.0 * 24.0 * 1000.0));
+  }
+
   private boolean nullable;
   private int width;
   private Instant defaultValue;
@@ -27,8 +44,13 @@ class DateFieldType implements FieldType {
     // print('Field %s : %f days since 1899/12/30' % (fields[ifield].name,
     // val))
 
-    return EPOCH.plusSeconds((long) Math.ceil(date * (3600.0 * 24.0)));
+    return Instant.ofEpochSecond(toEpochSecond(date));
+
+  }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return Instant.ofEpochSecond(toEpochSecond(file.readD64At(pos)));
   }
 
   @Override
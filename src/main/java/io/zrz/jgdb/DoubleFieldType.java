@@ -21,6 +21,11 @@ import lombok.Value;
     return file.readD64();
   }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return file.readD64At(pos);
+  }
+
   @Override
   public Object getDefaultValue() {
     return defaultValue;
@@ -0,0 +1,106 @@
+package io.zrz.jgdb;
+
+import java.util.List;
+
+/**
+ * Finds fields by name, ignoring case and leading or trailing whitespace,
+ * with a hash table worked out once for a list of fields.
+ *
+ * Looking a name up doesn't allocate: the name is hashed and compared in
+ * place rather than trimmed and lowercased first.
+ *
+ */
+
+final class FieldNames {
+
+  private final String[] names;
+
+  /**
+   * open addressing, holding the index of each field plus one so that 0 is
+   * empty.
+   */
+
+  private final int[] slots;
+
+  FieldNames(List<GeoField> fields) {
+
+    this.names = new String[fields.size()];
+
+    int size = Integer.highestOneBit(Math.max(fields.size(), 1) * 2) * 2;
+
+    this.slots = new int[size];
+
+    for (int i = 0; i < this.names.length; ++i) {
+
+      String name = fields.get(i).getName().trim();
+
+      this.names[i] = name;
+
+      int slot = hash(name, 0, name.length()) & (size - 1);
+
+      while (this.slots[slot] != 0) {
+        if (matches(this.slots[slot] - 1, name, 0, name.length())) {
+          // the first of fields with the same name wins, as with a scan.
+          break;
+        }
+        slot = (slot + 1) & (size - 1);
+      }
+
+      if (this.slots[slot] == 0) {
+        this.slots[slot] = i + 1;
+      }
+
+    }
+
+  }
+
+  /**
+   * the index of the named field, or -1 if there isn't one.
+   */
+
+  int find(String name) {
+
+    int start = 0;
+    int end = name.length();
+
+    while (start < end && name.charAt(start) <= ' ') {
+      ++start;
+    }
+
+    while (end > start && name.charAt(end - 1) <= ' ') {
+      --end;
+    }
+
+    int mask = this.slots.length - 1;
+    int slot = hash(name, start, end) & mask;
+
+    for (int entry = this.slots[slot]; entry != 0; entry = this.slots[slot]) {
+      if (matches(entry - 1, name, start, end)) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return -1;
+
+  }
+
+  private boolean matches(int field, String name, int start, int end) {
+    String other = this.names[field];
+    return other.length() == end - start && other.regionMatches(true, 0, name, start, end - start);
+  }
+
+  /**
+   * a hash of the characters which is the same for any case, as
+   * {@link String#equalsIgnoreCase(String)} sees it.
+   */
+
+  private static int hash(String name, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; ++i) {
+      h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+    }
+    return h ^ (h >>> 16);
+  }
+
+}
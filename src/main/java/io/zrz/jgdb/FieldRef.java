@@ -0,0 +1,45 @@
+package io.zrz.jgdb;
+
+/**
+ * A field of a layer, looked up by name once so that it can be read from each
+ * row without looking it up again:
+ *
+ * <pre>
+ * FieldRef name = layer.fieldRef("Name");
+ *
+ * layer.forEach((RowConsumer) feature -> System.out.println(feature.getValue(name).stringValue()));
+ * </pre>
+ *
+ * Rows from the layer it was obtained from (or the same selection of fields
+ * of it) read the field directly; any other row finds it by name.
+ *
+ */
+
+public final class FieldRef {
+
+  private final String name;
+
+  /**
+   * the projection the field was found in, and its position there. null if it
+   * wasn't looked up in one.
+   */
+
+  final FileGDBTable.Projection projection;
+  final int fieldId;
+
+  FieldRef(String name, FileGDBTable.Projection projection, int fieldId) {
+    this.name = name;
+    this.projection = projection;
+    this.fieldId = fieldId;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+
+}
@@ -9,6 +9,15 @@ interface FieldType {
 
   Object read(GeoBuffer file) throws IOException;
 
+  /**
+   * reads the value at the given position, which ends by the given end of the
+   * row, with positional reads. By default the value is read from a slice.
+   */
+
+  default Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return read(file.sliceAt(pos, (int) (end - pos)));
+  }
+
   Object getDefaultValue();
 
   <R> R apply(Object object, GeoValueVisitor<R> converter);
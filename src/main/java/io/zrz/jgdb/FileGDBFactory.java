@@ -1,7 +1,8 @@
 package io.zrz.jgdb;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
 
@@ -26,33 +27,85 @@ public class FileGDBFactory {
    */
 
   public static Optional<Integer> getVersionFromDirectory(Path dir) {
-    try (RandomAccessFile raf = new RandomAccessFile(dir.resolve("gdb").toFile(), "r")) {
-      byte version = raf.readByte();
-      return Optional.of((int) version);
+    try (InputStream in = Files.newInputStream(dir.resolve("gdb"))) {
+      int version = in.read();
+      return (version < 0) ? Optional.empty() : Optional.of(version);
     } catch (IOException ex) {
       throw new GeoDBException(ex);
     }
   }
 
+  /**
+   * Fetches the version of the GDB in the given store.
+   * 
+   * @return The version number, or absent if there is no "gdb" file.
+   */
+
+  public static Optional<Integer> getVersion(GeoStore store) {
+    if (!store.exists("gdb")) {
+      return Optional.empty();
+    }
+    try {
+      GeoBuffer file = store.open("gdb");
+      try {
+        return (file.remainingBytes() <= 0) ? Optional.empty() : Optional.of(file.readUInt8At(0));
+      } finally {
+        file.close();
+      }
+    } catch (IOException ex) {
+      throw new GeoDBException(ex);
+    }
+  }
+
+  /**
+   * Opens the GDB in the given folder, memory mapping its files.
+   * 
+   * The folder can be on any {@link java.nio.file.FileSystem}. In a zip opened
+   * with the zip filesystem, files stored uncompressed are mapped straight out
+   * of the archive and deflated ones are inflated into memory as they're
+   * opened, so nothing needs extracting first.
+   */
+
   public static GeoDB open(final Path dir) {
+    return open(dir, GeoFileAccess.MMAP);
+  }
+
+  /**
+   * Opens the GDB in the given folder.
+   * 
+   * @param dir
+   *          the database.
+   * @param access
+   *          how the files of the database are read.
+   */
+
+  public static GeoDB open(final Path dir, final GeoFileAccess access) {
+    return open(new GeoPathStore(dir, access));
+  }
+
+  /**
+   * Opens the GDB with its files in the given store, which is closed along with
+   * the database.
+   */
+
+  public static GeoDB open(final GeoStore store) {
 
-    Optional<Integer> gdbver = getVersionFromDirectory(dir);
+    Optional<Integer> gdbver = getVersion(store);
 
     if (!gdbver.isPresent()) {
-      throw new IllegalArgumentException(String.format("%s is not a file GDB folder"));
+      throw new IllegalArgumentException(String.format("%s is not a file GDB", store));
     }
 
     switch (gdbver.get()) {
       case 2:
         // version 9
-        return GeoDB_R4.open(dir);
+        return GeoDB_R4.open(store);
       case 5:
         // version 10.
-        return GeoDB_R5.open(dir);
+        return GeoDB_R5.open(store);
       default:
         throw new GeoDBException(String.format("Unknown GeoDB version '%d'", gdbver.get()));
     }
-    
 
   }
 
@@ -1,13 +1,11 @@
 package io.zrz.jgdb;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.BitSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import lombok.Builder;
 import lombok.Value;
@@ -19,14 +17,13 @@ public class FileGDBTable {
   private static class Header {
     // int32: number of (valid) rows
     long rows;
-    int filesize;
-    int offset;
+    long filesize;
+    long offset;
     int bytes;
     int version;
     int type;
   }
 
-  private final RandomAccessFile xfile;
   private Header header;
   private List<GeoField> fields;
 
@@ -37,26 +34,51 @@ public class FileGDBTable {
   private Integer fidId;
   private Integer shapeId;
 
-  private GeoMappedFileBuffer file;
+  private GeoBuffer file;
+
+  /**
+   * the projection of all the fields.
+   */
+
+  private Projection all;
+
+  /**
+   * how to find the fields in a row.
+   */
+
+  private RowPlan plan;
+
+  /**
+   * for each field, the dictionary its values are decoded through, if it's
+   * interned. replaced rather than changed.
+   */
+
+  private volatile StringDictionary[] dictionaries;
+
+  private volatile boolean closed;
 
   /**
    * 
-   * @param path
+   * @param file
+   *          the buffer to read the .gdbtable from, which is closed along with
+   *          this table.
    * @throws IOException
    */
 
-  public FileGDBTable(final Path path) throws IOException {
-    this.xfile = new RandomAccessFile(path.toFile(), "r");
-    this.file = new GeoMappedFileBuffer(xfile, xfile.length());
+  public FileGDBTable(final GeoBuffer file) throws IOException {
+    this.file = file;
     this.header = this.readHeader();
     this.fields = this.readFields();
+    this.all = this.createProjection();
+    this.plan = new RowPlan(this.fields);
+    this.dictionaries = new StringDictionary[this.fields.size()];
   }
 
   public Header readHeader() throws IOException {
 
-    final int magic = file.readInt();
+    final int magic = file.readInt32();
 
-    if (magic != 0x3000000) {
+    if (magic != 3) {
       throw new IllegalArgumentException("Invalid Magic");
     }
 
@@ -65,21 +87,21 @@ public class FileGDBTable {
     final Header.HeaderBuilder b = Header.builder();
 
     //
-    b.rows(Integer.reverseBytes(file.readInt()));
+    b.rows(file.readInt32());
     file.skipBytes(16);
 
-    b.filesize(Integer.reverseBytes(file.readInt()));
-    file.skipBytes(4);
+    // int64: file size, and the offset of the field description section.
+    b.filesize(file.readUInt32() | (file.readUInt32() << 32));
 
-    int offset = Integer.reverseBytes(file.readInt());
+    long offset = file.readUInt32() | (file.readUInt32() << 32);
 
     b.offset(offset);
 
     file.seek(offset);
 
-    final int bytes = Integer.reverseBytes(file.readInt());
-    final int version = Integer.reverseBytes(file.readInt());
-    int geotype = file.readUnsignedByte();
+    final int bytes = file.readInt32();
+    final int version = file.readInt32();
+    int geotype = file.readUInt8();
 
     b.bytes(bytes);
     b.version(version);
@@ -160,7 +182,7 @@ public class FileGDBTable {
     String alias = readUTFString();
     b.alias(alias);
 
-    int geotype = file.readUnsignedByte();
+    int geotype = file.readUInt8();
 
     switch (geotype) {
       case 5:
@@ -169,11 +191,11 @@ public class FileGDBTable {
       case 1:
       case 0: {
 
-        int width = file.readUnsignedByte();
-        int flags = file.readUnsignedByte();
+        int width = file.readUInt8();
+        int flags = file.readUInt8();
 
         // the length of the default value ...
-        int defaultLength = file.readUnsignedByte();
+        int defaultLength = file.readUInt8();
 
         if (defaultLength != 0) {
 
@@ -244,11 +266,11 @@ public class FileGDBTable {
         StringFieldType.StringFieldTypeBuilder sb = StringFieldType.builder();
 
         // string
-        int maxlen = Integer.reverseBytes(file.readInt());
+        int maxlen = file.readInt32();
 
         sb.maxlen(maxlen);
 
-        int flags = file.readUnsignedByte();
+        int flags = file.readUInt8();
 
         int defaultLength = readUnsignedVarInt();
 
@@ -273,14 +295,14 @@ public class FileGDBTable {
       case 11: {
         // uuid
         file.skipBytes(1);
-        int flags = file.readUnsignedByte();
+        int flags = file.readUInt8();
         b.type((flags & 1) == 1 ? UUIDFieldType.NULLABLE_INSTANCE : UUIDFieldType.INSTANCE);
         break;
       }
       case 12: {
         // XML
         file.skipBytes(1);
-        int flags = file.readUnsignedByte();
+        int flags = file.readUInt8();
         XmlFieldType.XmlFieldTypeBuilder sb = XmlFieldType.builder();
         sb.nullable((flags & 1) == 1);
         b.type(sb.build());
@@ -289,7 +311,7 @@ public class FileGDBTable {
       case 8: {
         // binary
         file.skipBytes(1);
-        int flags = file.readUnsignedByte();
+        int flags = file.readUInt8();
         BinaryFieldType.BinaryFieldTypeBuilder sb = BinaryFieldType.builder();
         sb.nullable((flags & 1) == 1);
         b.type(sb.build());
@@ -302,7 +324,7 @@ public class FileGDBTable {
         // geometry
         file.skipBytes(1);
 
-        int flag = file.readUnsignedByte();
+        int flag = file.readUInt8();
 
         sb.nullable((flag & 1) == 1);
 
@@ -317,7 +339,7 @@ public class FileGDBTable {
           sb.wkt(wkt);
         }
 
-        int flags = file.readUnsignedByte();
+        int flags = file.readUInt8();
 
         // int has3d
 
@@ -396,17 +418,22 @@ public class FileGDBTable {
 
           if (check[0] == 0 && check[2] == 0 && check[3] == 0 && check[4] == 0 && (check[1] > 0x00 && check[1] < 0x04)) {
 
+            // the sizes of the cells of each level of the spatial index grid.
+            double[] gridSizes = new double[check[1]];
+
             for (int i = 0; i < check[1]; ++i) {
-              Double.longBitsToDouble(Long.reverseBytes(file.readLong()));
+              gridSizes[i] = file.readD64();
               doubles++;
             }
 
+            sb.gridSizes(gridSizes);
+
             break;
 
           } else {
 
             file.seek(pos);
-            Double.longBitsToDouble(Long.reverseBytes(file.readLong()));
+            file.readD64();
             doubles++;
 
           }
@@ -439,7 +466,7 @@ public class FileGDBTable {
 
   private String readUTFString() throws IOException {
 
-    int utf16len = file.readUnsignedByte();
+    int utf16len = file.readUInt8();
 
     if (utf16len == 0) {
       return null;
@@ -453,7 +480,7 @@ public class FileGDBTable {
     char[] data = new char[utf16len];
 
     while (remain > 0) {
-      char c = Character.reverseBytes(file.readChar());
+      char c = file.readChar();
       data[utf16len - remain] = c;
       remain--;
     }
@@ -465,111 +492,310 @@ public class FileGDBTable {
     return new String(data);
   }
 
+  public void prefetch() {
+    this.file.prefetch(0, Long.MAX_VALUE);
+  }
+
   public void close() {
+    this.closed = true;
     this.file.close();
   }
 
+  private void checkOpen() {
+    if (this.closed) {
+      throw new IllegalStateException("Table is closed");
+    }
+  }
+
   /**
-   * fetches a field and the associated rows.
+   * A subset of the fields of a table, in the order they were asked for.
    */
 
-  GeoFeature getRow(long featureId, long offset) {
+  static final class Projection {
 
-    try {
+    private final List<GeoField> fields;
 
-      GeoFeature.GeoFeatureBuilder fb = GeoFeature.builder();
+    /**
+     * for each field in the projection, its position in the table.
+     */
 
-      fb.featureId(featureId);
+    final int[] columns;
 
-      fb.fields(this.fields);
+    private final FieldNames names;
 
-      try {
+    private Projection(List<GeoField> fields, int[] columns) {
+      this.fields = fields;
+      this.columns = columns;
+      this.names = new FieldNames(fields);
+    }
 
-        file.seek(offset);
+    List<GeoField> getFields() {
+      return this.fields;
+    }
 
-        // the length of the data ..
-        int blobLen = file.readInt32();
+    /**
+     * the position of the named field in the projection.
+     */
+
+    int getField(String name) {
+      int field = this.names.find(name);
+      if (field < 0) {
+        throw new IllegalArgumentException(String.format("No such field: '%s'", name));
+      }
+      return field;
+    }
+  }
+
+  /**
+   * A projection of all the fields.
+   */
+
+  Projection project() {
+    return this.all;
+  }
+
+  private Projection createProjection() {
+    int[] columns = new int[this.fields.size()];
+    for (int i = 0; i < columns.length; ++i) {
+      columns[i] = i;
+    }
+    return new Projection(this.fields, columns);
+  }
 
-        if (blobLen < 0) {
-          throw new GeoDBException(String.format("Crazy sized row at byte offset %d (%d)", offset, blobLen));
+  /**
+   * A projection of the named fields.
+   * 
+   * @throws IllegalArgumentException
+   *           if a field doesn't exist or is named twice.
+   */
+
+  Projection project(String... names) {
+
+    int[] columns = new int[names.length];
+
+    for (int i = 0; i < names.length; ++i) {
+      columns[i] = getField(names[i]);
+      for (int j = 0; j < i; ++j) {
+        if (columns[j] == columns[i]) {
+          throw new IllegalArgumentException(String.format("Field selected twice: '%s'", names[i]));
         }
+      }
+    }
 
-        int pos = (int) file.getFilePointer();
-        byte[] buf = new byte[blobLen];
-        file.readFully(buf);
-        file.seek(pos);
+    List<GeoField> selected = new ArrayList<>(names.length);
 
-        int nullable = (int) Math.ceil(getNullableFields().size() / 8.0);
+    for (int column : columns) {
+      selected.add(this.fields.get(column));
+    }
+
+    return new Projection(Collections.unmodifiableList(selected), columns);
+
+  }
+
+  /**
+   * fetches a row, as a view which decodes each field when it's first asked
+   * for. see {@link GeoFeature}.
+   */
+
+  GeoFeature getRow(long featureId, long offset) {
+    return getRow(featureId, offset, this.all);
+  }
 
-        byte[] flags = new byte[nullable];
+  /**
+   * fetches a row with only the fields in the projection. fields which aren't
+   * are skipped over by their length or width without being decoded, and
+   * nothing after the last one is read at all.
+   */
 
-        file.readFully(flags);
+  GeoFeature getRow(long featureId, long offset, Projection projection) {
+    return new GeoFeature(featureId, this, projection, offset + 4, getRowLength(offset));
+  }
 
-        int nullflagpos = 0;
+  /**
+   * the length of the row at the given offset, which is about to be read.
+   */
 
-        int id = 0;
+  int getRowLength(long offset) {
 
-        BitSet nullflags = BitSet.valueOf(flags);
+    checkOpen();
 
-        for (GeoField f : this.fields) {
+    int blobLen = file.readInt32At(offset);
 
-          boolean nulled = (f.getType().isNullable()) && nullflags.get(nullflagpos);
+    if (blobLen < 0) {
+      throw new GeoDBException(String.format("Crazy sized row at byte offset %d (%d)", offset, blobLen));
+    }
 
-          if (f.getType().isNullable()) {
-            ++nullflagpos;
-          }
+    file.accessed(offset, 4L + blobLen);
 
-          if (this.fidId == null || this.fidId != id) {
+    return blobLen;
 
-            if (nulled) {
-              fb.value(f.getType().getDefaultValue());
-            } else {
-              // read the field.
-              fb.value(f.getType().read(file));
-            }
+  }
 
-          }
+  // -- decoding fields, for GeoRow. rows are read with positional reads
+  // only, so can be decoded from any number of threads at once.
 
-          ++id;
+  GeoBuffer getBuffer() {
+    return this.file;
+  }
 
-        }
+  /**
+   * the position of the first field of the row at the given position, after
+   * the null flags.
+   */
 
-        return fb.build();
+  long firstField(long row) {
+    return this.plan.firstField(row);
+  }
 
-      } catch (final IOException e) {
-        throw new RuntimeException(e);
-      }
-    } catch (Exception ex) {
-      throw new GeoDBException(String.format("While processing FID %d at offset %d", featureId, offset), ex);
+  /**
+   * true if the given field of the row at the given position is null.
+   */
+
+  boolean isNull(long row, int field) {
+    // every field is checked for null before it's read, so this is where reads
+    // from rows of a closed table are caught.
+    checkOpen();
+    return this.plan.isNull(this.file, row, field);
+  }
+
+  /**
+   * the position after the (non null) value of the given field at the given
+   * position.
+   */
+
+  long skip(long pos, int field) {
+    return this.plan.skip(this.file, pos, field);
+  }
+
+  /**
+   * how the given field is stored.
+   */
+
+  RowPlan.Kind kind(int field) {
+    return this.plan.kind(field);
+  }
+
+  /**
+   * the position of the given field after the start of every row, or -1 if it
+   * depends on the row.
+   */
+
+  int fixedPosition(int field) {
+    return this.plan.fixedPosition(field);
+  }
+
+  /**
+   * decodes the value of the given field at the given position, which ends
+   * by the given end of the row.
+   */
+
+  Object read(long pos, long end, int field) throws IOException {
+    StringDictionary dictionary = this.dictionaries[field];
+    if (dictionary != null && dictionary.isEnabled()) {
+      return dictionary.read(this.file, pos);
+    }
+    return this.fields.get(field).getType().readAt(this.file, pos, end);
+  }
+
+  /**
+   * decodes the values of the given string field through a dictionary, so
+   * each distinct value shares one instance. see {@link StringDictionary}.
+   * 
+   * @throws IllegalArgumentException
+   *           if the field isn't a string.
+   */
+
+  synchronized void intern(int field) {
+
+    if (this.plan.kind(field) != RowPlan.Kind.STRING) {
+      throw new IllegalArgumentException(String.format("%s is not a string field", this.fields.get(field).getName()));
+    }
+
+    if (this.dictionaries[field] == null) {
+      StringDictionary[] dictionaries = this.dictionaries.clone();
+      dictionaries[field] = new StringDictionary();
+      this.dictionaries = dictionaries;
     }
 
   }
 
-  private List<GeoField> getNullableFields() {
-    return this.fields.stream().filter(f -> f.getType().isNullable()).collect(Collectors.toList());
+  /**
+   * the dictionary of the given field, or null if it isn't interned.
+   */
+
+  StringDictionary getDictionary(int field) {
+    return this.dictionaries[field];
   }
 
   public long getRowCount() {
     return this.header.getRows();
   }
 
+  /**
+   * the size of the .gdbtable, as recorded in its header.
+   */
+
+  long getFileSize() {
+    return this.header.getFilesize();
+  }
+
   public List<GeoField> getFields() {
     return this.fields;
   }
 
+  /**
+   * Finds the offsets of the rows by walking the row blobs from the end of the
+   * field descriptions, for tables whose .gdbtablx is missing. Blocks with a
+   * negative length are free space left by deleted rows, and are skipped.
+   */
+
+  long[] findRows() {
+
+    long pos = this.header.getOffset() + 4 + this.header.getBytes();
+    long end = this.header.getFilesize();
+
+    long[] offsets = new long[1024];
+    int count = 0;
+
+    while (pos + 4 <= end) {
+
+      int len = this.file.readInt32At(pos);
+
+      if (len < 0) {
+
+        // the length of a free block includes its own.
+        if (len == Integer.MIN_VALUE || -len < 4) {
+          throw new GeoDBException(String.format("Invalid free block at byte offset %d (%d)", pos, len));
+        }
+
+        pos -= len;
+        continue;
+
+      }
+
+      if (pos + 4 + len > end) {
+        throw new GeoDBException(String.format("Row at byte offset %d (%d bytes) runs past the end of the table", pos, len));
+      }
+
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+
+      offsets[count++] = pos;
+      pos += 4 + len;
+
+    }
+
+    return Arrays.copyOf(offsets, count);
+
+  }
+
   public int getVersion() {
     return this.header.getVersion();
   }
 
   public int getField(String name) {
-    name = name.toLowerCase().trim();
-    for (int i = 0; i < this.fields.size(); ++i) {
-      String fname = fields.get(i).getName().trim().toLowerCase();
-      if (fname.equals(name)) {
-        return i;
-      }
-    }
-    throw new IllegalArgumentException(String.format("No such field: '%s'", name));
+    return this.all.getField(name);
   }
 
 }
@@ -22,6 +22,11 @@ class FloatFieldType implements FieldType {
     return file.readF32();
   }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return file.readF32At(pos);
+  }
+
   @Override
   public Object getDefaultValue() {
     return defaultValue;
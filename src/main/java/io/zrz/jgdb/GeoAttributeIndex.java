@@ -0,0 +1,274 @@
+package io.zrz.jgdb;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import lombok.Value;
+
+/**
+ * A B-tree attribute index (.atx) over a field of a table, found through the
+ * table's .gdbindexes. See {@link GeoBTree} for the layout of the file.
+ *
+ * Lookups return OBJECTIDs in key order, and can be passed on to
+ * {@link GeoLayer#getFeatures(int[])}. String keys are cut off at the width of
+ * the index (80 characters by default), so for longer values a match only
+ * means the start of the value matched. Indexes over LOWER(field) match
+ * without regard to case.
+ *
+ */
+
+public class GeoAttributeIndex {
+
+  private static final long DATE_EPOCH = Instant.parse("1899-12-30T00:00:00.00Z").toEpochMilli();
+
+  private enum KeyType {
+    INT16, INT32, FLOAT32, FLOAT64, STRING
+  }
+
+  /**
+   * An index listed in a .gdbindexes file.
+   */
+
+  @Value
+  static class Definition {
+    private String name;
+    private String expression;
+  }
+
+  private final String name;
+  private final String expression;
+  private final GeoField field;
+  private final boolean lowerCase;
+  private final GeoBTree tree;
+  private final GeoBuffer file;
+
+  private final KeyType type;
+  private final int valueSize;
+
+  GeoAttributeIndex(String name, String expression, GeoField field, GeoBuffer file) {
+
+    this.name = name;
+    this.expression = expression;
+    this.field = field;
+    this.lowerCase = expression.toUpperCase(Locale.ROOT).startsWith("LOWER(");
+    this.tree = new GeoBTree(name, file);
+    this.file = file;
+    this.valueSize = tree.getValueSize();
+
+    this.type = keyType(field.getType(), valueSize);
+
+  }
+
+  private static KeyType keyType(FieldType type, int valueSize) {
+    if (type instanceof ShortFieldType && valueSize == 2) {
+      return KeyType.INT16;
+    } else if (type instanceof IntFieldType && valueSize == 4) {
+      return KeyType.INT32;
+    } else if (type instanceof FloatFieldType && valueSize == 4) {
+      return KeyType.FLOAT32;
+    } else if ((type instanceof DoubleFieldType || type instanceof DateFieldType) && valueSize == 8) {
+      return KeyType.FLOAT64;
+    } else if ((type instanceof StringFieldType || type instanceof UUIDFieldType) && (valueSize % 2) == 0) {
+      return KeyType.STRING;
+    }
+    throw new GeoDBException(String.format("Unsupported index of %d byte values over %s", valueSize, type.getClass().getSimpleName()));
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * The expression indexed, e.g "NAME" or "LOWER(NAME)".
+   */
+
+  public String getExpression() {
+    return this.expression;
+  }
+
+  public GeoField getField() {
+    return this.field;
+  }
+
+  /**
+   * The number of values in the index.
+   */
+
+  public int getValueCount() {
+    return this.tree.getValueCount();
+  }
+
+  /**
+   * The OBJECTIDs of the rows where the field equals the given value.
+   */
+
+  public int[] findEqual(Object value) {
+    GeoBTree.Bound bound = bound(value, -1);
+    return tree.find(bound, bound);
+  }
+
+  /**
+   * The OBJECTIDs of the rows where the (string) field starts with the given
+   * prefix.
+   */
+
+  public int[] findPrefix(String prefix) {
+    if (this.type != KeyType.STRING) {
+      throw new IllegalArgumentException(String.format("%s is not a string index", this.name));
+    }
+    GeoBTree.Bound bound = bound(prefix, prefix.length());
+    return tree.find(bound, bound);
+  }
+
+  /**
+   * The OBJECTIDs of the rows where the field is between the given values,
+   * inclusive. Either may be null to leave that end open.
+   */
+
+  public int[] findRange(Object from, Object to) {
+    return tree.find(from == null ? null : bound(from, -1), to == null ? null : bound(to, -1));
+  }
+
+  public void close() {
+    this.tree.close();
+  }
+
+  /**
+   * Reads the definitions of the indexes of a table from its .gdbindexes file.
+   * Spatial indexes are listed here too, but have no .atx.
+   */
+
+  static List<Definition> readDefinitions(GeoBuffer file) {
+
+    int count = file.readInt32();
+
+    if (count < 0 || count > 1024) {
+      throw new GeoDBException(String.format("Invalid index count: %d", count));
+    }
+
+    List<Definition> defs = new ArrayList<>(count);
+
+    for (int i = 0; i < count; ++i) {
+
+      String name = readString(file);
+
+      // unknown.
+      file.skipBytes(2 + 4 + 2 + 4);
+
+      String expression = readString(file);
+
+      // unknown.
+      file.skipBytes(2);
+
+      defs.add(new Definition(name, expression));
+
+    }
+
+    return defs;
+
+  }
+
+  private static String readString(GeoBuffer file) {
+
+    int len = file.readInt32();
+
+    if (len < 0 || len > 1024) {
+      throw new GeoDBException(String.format("Invalid index name length: %d", len));
+    }
+
+    char[] chars = new char[len];
+
+    for (int i = 0; i < len; ++i) {
+      chars[i] = file.readChar();
+    }
+
+    return new String(chars);
+
+  }
+
+  /**
+   * The name of the field an index expression is over, e.g NAME for
+   * LOWER(NAME).
+   */
+
+  static String fieldName(String expression) {
+    String expr = expression.trim();
+    if (expr.toUpperCase(Locale.ROOT).startsWith("LOWER(") && expr.endsWith(")")) {
+      return expr.substring(6, expr.length() - 1).trim();
+    }
+    return expr;
+  }
+
+  // --
+
+  /**
+   * a bound on the key, only comparing the first chars characters of string
+   * keys if it's not negative.
+   */
+
+  private GeoBTree.Bound bound(Object value, int chars) {
+
+    switch (this.type) {
+
+      case INT16:
+      case INT32: {
+        long v = ((Number) value).longValue();
+        return this.type == KeyType.INT16 ? pos -> Long.compare(file.readInt16At(pos), v) : pos -> Long.compare(file.readInt32At(pos), v);
+      }
+
+      case FLOAT32:
+      case FLOAT64: {
+        double v = toDouble(value);
+        return this.type == KeyType.FLOAT32 ? pos -> Double.compare(file.readF32At(pos), v) : pos -> Double.compare(file.readD64At(pos), v);
+      }
+
+      case STRING: {
+
+        String str = (value instanceof UUID) ? "{" + value.toString().toUpperCase(Locale.ROOT) + "}" : value.toString();
+
+        if (this.lowerCase) {
+          str = str.toLowerCase(Locale.ROOT);
+        }
+
+        int width = this.valueSize / 2;
+        int count = (chars < 0) ? width : Math.min(chars, width);
+
+        // compared against the key padded with spaces, as the keys are.
+        char[] v = new char[count];
+        Arrays.fill(v, ' ');
+        str.getChars(0, Math.min(str.length(), count), v, 0);
+
+        return pos -> {
+          for (int i = 0; i < v.length; ++i) {
+            int c = Character.compare((char) file.readInt16At(pos + i * 2), v[i]);
+            if (c != 0) {
+              return c;
+            }
+          }
+          return 0;
+        };
+
+      }
+
+      default:
+        throw new IllegalStateException(this.type.name());
+
+    }
+
+  }
+
+  private static double toDouble(Object value) {
+    if (value instanceof Instant) {
+      return (((Instant) value).toEpochMilli() - DATE_EPOCH) / 86400000.0;
+    } else if (value instanceof Date) {
+      return (((Date) value).getTime() - DATE_EPOCH) / 86400000.0;
+    }
+    return ((Number) value).doubleValue();
+  }
+
+}
@@ -0,0 +1,188 @@
+package io.zrz.jgdb;
+
+import java.util.Arrays;
+
+/**
+ * The B-tree shared by the attribute (.atx) and spatial (.spx) index files,
+ * mapping fixed size keys to the OBJECTIDs of rows.
+ *
+ * The file is made of 4096 byte pages, with the root at page 1 and a 22 byte
+ * trailer giving the size of each key, the depth of the tree and the number of
+ * keys. Internal pages hold the keys splitting their children, leaf pages hold
+ * the keys and the OBJECTID each came from.
+ *
+ * Only positional reads are used, so lookups can be made from any thread.
+ *
+ */
+
+final class GeoBTree {
+
+  static final int PAGE_SIZE = 4096;
+
+  private static final int TRAILER_SIZE = 22;
+
+  /**
+   * One end of a lookup, compared against the key at a position in the file.
+   */
+
+  @FunctionalInterface
+  interface Bound {
+
+    /**
+     * negative if the key is before this bound, positive if after.
+     */
+
+    int compareKey(long pos);
+
+  }
+
+  private final String name;
+  private final GeoBuffer file;
+  private final int valueSize;
+  private final int depth;
+  private final int valueCount;
+  private final int maxPerPage;
+
+  GeoBTree(String name, GeoBuffer file) {
+
+    this.name = name;
+    this.file = file;
+
+    long length = file.remainingBytes();
+
+    if (length < TRAILER_SIZE) {
+      throw new GeoDBException(String.format("Index %s too short", name));
+    }
+
+    long trailer = length - TRAILER_SIZE;
+
+    this.valueSize = file.readUInt8At(trailer);
+
+    if (file.readInt32At(trailer + 2) != 1) {
+      throw new GeoDBException(String.format("Index %s: invalid magic", name));
+    }
+
+    this.depth = file.readInt32At(trailer + 6);
+    this.valueCount = file.readInt32At(trailer + 10);
+
+    if (depth < 1 || depth > 4 || valueSize == 0) {
+      throw new GeoDBException(String.format("Index %s: unsupported depth %d", name, depth));
+    }
+
+    this.maxPerPage = (PAGE_SIZE - 12) / (4 + valueSize);
+
+  }
+
+  GeoBuffer getFile() {
+    return this.file;
+  }
+
+  int getValueSize() {
+    return this.valueSize;
+  }
+
+  int getValueCount() {
+    return this.valueCount;
+  }
+
+  /**
+   * The OBJECTIDs of the keys between the bounds (inclusive), in key order.
+   * Either bound may be null to leave that end open.
+   */
+
+  int[] find(Bound from, Bound to) {
+    IntList result = new IntList();
+    find(from, to, result);
+    return result.toArray();
+  }
+
+  void find(Bound from, Bound to, IntList result) {
+    if (this.valueCount > 0) {
+      visit(1, 1, from, to, result);
+    }
+  }
+
+  void close() {
+    this.file.close();
+  }
+
+  /**
+   * walks the tree, only descending into pages which may hold keys between the
+   * bounds.
+   */
+
+  private void visit(long page, int level, Bound from, Bound to, IntList result) {
+
+    long base = (page - 1) * PAGE_SIZE;
+    int count = file.readInt32At(base + 4);
+
+    if (count < 0 || count > this.maxPerPage) {
+      throw new GeoDBException(String.format("Index %s: corrupt page %d", this.name, page));
+    }
+
+    long keys = base + 12 + (long) this.maxPerPage * 4;
+
+    if (level == this.depth) {
+
+      for (int i = 0; i < count; ++i) {
+        long key = keys + (long) i * this.valueSize;
+        if (from != null && from.compareKey(key) < 0) {
+          continue;
+        }
+        if (to != null && to.compareKey(key) > 0) {
+          // sorted, so nothing else in the page will match.
+          break;
+        }
+        result.add(file.readInt32At(base + 12 + i * 4));
+      }
+
+      return;
+
+    }
+
+    // child i holds the keys up to key i, the last child everything after. equal
+    // keys may be split across neighbouring children.
+
+    for (int i = 0; i <= count; ++i) {
+
+      if (i < count && from != null && from.compareKey(keys + (long) i * this.valueSize) < 0) {
+        continue;
+      }
+
+      if (i > 0 && to != null && to.compareKey(keys + (long) (i - 1) * this.valueSize) > 0) {
+        break;
+      }
+
+      visit(file.readUInt32At(base + 8 + i * 4), level + 1, from, to, result);
+
+    }
+
+  }
+
+  /**
+   * a growable array of ints.
+   */
+
+  static final class IntList {
+
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+
+  }
+
+}
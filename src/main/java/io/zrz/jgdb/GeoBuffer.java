@@ -1,17 +1,16 @@
 package io.zrz.jgdb;
 
+/**
+ * Reads the little endian values of a geodatabase file.
+ *
+ */
+
 public interface GeoBuffer {
 
   void seek(long pos);
 
   int readInt32();
 
-  int readVarUInt32();
-
-  long readVarUInt64();
-
-  long readVarInt64();
-
   long remainingBytes();
 
   void skipBytes(int i);
@@ -24,8 +23,6 @@ public interface GeoBuffer {
 
   char readChar();
 
-  int readVarInt32();
-
   short readInt16();
 
   float readF32();
@@ -34,4 +31,143 @@ public interface GeoBuffer {
 
   int readUInt8();
 
+  // --
+  // the varints, decoded a byte at a time with readUInt8(). lengths, counts and
+  // ids are stored unsigned; geometry coordinates are signed, with the sign in
+  // the 7th bit of the first byte.
+
+  default int readVarUInt32() {
+    return (int) readVarUInt64();
+  }
+
+  default long readVarUInt64() {
+    int shift = 0;
+    long result = 0;
+    while (shift < 64) {
+      int b = readUInt8();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+      shift += 7;
+    }
+    throw new IllegalArgumentException("malformed");
+  }
+
+  default int readVarInt32() {
+    return (int) readVarInt64();
+  }
+
+  default long readVarInt64() {
+
+    int b = readUInt8();
+
+    long value = b & 0x3F;
+    boolean negative = (b & 0x40) != 0;
+    int shift = 6;
+
+    while ((b & 0x80) != 0) {
+      if (shift >= 64) {
+        throw new IllegalArgumentException("malformed");
+      }
+      b = readUInt8();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    }
+
+    return negative ? -value : value;
+
+  }
+
+  /**
+   * Reads the given number of consecutive signed varints, as
+   * {@link #readVarInt64()} would, into the start of the array.
+   */
+
+  default void readVarInt64s(long[] dst, int count) {
+    for (int i = 0; i < count; ++i) {
+      dst[i] = readVarInt64();
+    }
+  }
+
+  /**
+   * Creates a new cursor over the same underlying data, starting at position
+   * zero. The cursor is independent of this one, and may be used from another
+   * thread.
+   */
+
+  GeoBuffer duplicate();
+
+  /**
+   * Releases the underlying resources. A cursor created with
+   * {@link #duplicate()} should be closed once it's done with too, as some
+   * buffers keep their resources until the last cursor over them is closed.
+   */
+
+  void close();
+
+  /**
+   * Hints that the given range (clamped to the end of the data) is about to be
+   * read, so can be loaded into memory ahead of time. Does nothing by default.
+   */
+
+  default void prefetch(long pos, long len) {
+  }
+
+  /**
+   * Tells the buffer that the given range is about to be read as one row, so
+   * it can watch for a scan through the file and read ahead of it. Called once
+   * per row. Does nothing by default.
+   */
+
+  default void accessed(long pos, long len) {
+  }
+
+  // --
+  // positional reads. these don't use or change the position of this buffer, so
+  // can be used concurrently on the same instance.
+
+  int readUInt8At(long pos);
+
+  short readInt16At(long pos);
+
+  int readInt32At(long pos);
+
+  long readUInt32At(long pos);
+
+  float readF32At(long pos);
+
+  double readD64At(long pos);
+
+  void readFullyAt(long pos, byte[] data);
+
+  /**
+   * The position after the value at the given position which is stored as its
+   * length (a varuint) followed by that many bytes, e.g a string or geometry.
+   */
+
+  default long skipBlobAt(long pos) {
+    long length = VarInts.unsignedAt(this, pos);
+    return pos + VarInts.sizeOf(length) + VarInts.valueOf(length);
+  }
+
+  /**
+   * The bytes of the value at the given position which is stored as its length
+   * (a varuint) followed by that many bytes, e.g a string or blob.
+   */
+
+  default byte[] readBlobAt(long pos) {
+    long length = VarInts.unsignedAt(this, pos);
+    byte[] data = new byte[VarInts.intValueOf(length)];
+    readFullyAt(pos + VarInts.sizeOf(length), data);
+    return data;
+  }
+
+  /**
+   * A new buffer over the given range of this one. Positions in the returned
+   * buffer are relative to the start of the slice.
+   */
+
+  GeoBuffer sliceAt(long pos, int len);
+
 }
@@ -0,0 +1,194 @@
+package io.zrz.jgdb;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link GeoBuffer} over a single {@link ByteBuffer}, which may be on heap or
+ * a slice of a mapped file.
+ *
+ * The buffer is switched to little endian order, which all the values in a
+ * geodatabase are stored in.
+ *
+ * The underlying buffer is only read with absolute positions, so the
+ * positional reads can be made from any number of threads at once. Only the
+ * sequential reads use the position of the instance.
+ *
+ */
+
+public class GeoByteBuffer implements GeoBuffer {
+
+  private final ByteBuffer buf;
+  private final int len;
+  private int pos;
+
+  public GeoByteBuffer(ByteBuffer buf) {
+    this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+    this.len = buf.limit();
+  }
+
+  public GeoByteBuffer(byte[] data) {
+    this(ByteBuffer.wrap(data));
+  }
+
+  @Override
+  public char readChar() {
+    char ch = buf.getChar(pos);
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public float readF32() {
+    float ch = readF32At(pos);
+    pos += 4;
+    return ch;
+  }
+
+  public byte readByte() {
+    return buf.get(pos++);
+  }
+
+  @Override
+  public short readInt16() {
+    short ch = readInt16At(pos);
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public int readInt32() {
+    int ch = readInt32At(pos);
+    pos += 4;
+    return ch;
+  }
+
+  @Override
+  public long readUInt32() {
+    return readInt32() & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public double readD64() {
+    double ch = readD64At(pos);
+    pos += 8;
+    return ch;
+  }
+
+  @Override
+  public int readUInt8() {
+    return buf.get(pos++) & 0xFF;
+  }
+
+  /**
+   * Any value with 8 bytes of buffer after it is decoded from a single word, so
+   * there's one bounds check per value rather than one per byte.
+   */
+
+  @Override
+  public void readVarInt64s(long[] dst, int count) {
+
+    int p = this.pos;
+    int fast = this.len - 8;
+
+    for (int i = 0; i < count; ++i) {
+
+      if (p <= fast) {
+        long word = buf.getLong(p);
+        int n = VarInts.length(word);
+        if (n != 0) {
+          dst[i] = VarInts.signed(word, n);
+          p += n;
+          continue;
+        }
+      }
+
+      this.pos = p;
+      dst[i] = readVarInt64();
+      p = this.pos;
+
+    }
+
+    this.pos = p;
+
+  }
+
+  @Override
+  public long remainingBytes() {
+    return len - pos;
+  }
+
+  @Override
+  public void seek(long pos) {
+    this.pos = (int) pos;
+  }
+
+  @Override
+  public void skipBytes(int i) {
+    pos += i;
+  }
+
+  @Override
+  public void readFully(byte[] defaultValue) {
+    buf.get(pos, defaultValue, 0, defaultValue.length);
+    pos += defaultValue.length;
+  }
+
+  @Override
+  public long getFilePointer() {
+    return pos;
+  }
+
+  @Override
+  public GeoByteBuffer duplicate() {
+    return new GeoByteBuffer(buf);
+  }
+
+  @Override
+  public void close() {
+    // nothing to release.
+  }
+
+  // --
+
+  @Override
+  public int readUInt8At(long pos) {
+    return buf.get((int) pos) & 0xFF;
+  }
+
+  @Override
+  public short readInt16At(long pos) {
+    return buf.getShort((int) pos);
+  }
+
+  @Override
+  public int readInt32At(long pos) {
+    return buf.getInt((int) pos);
+  }
+
+  @Override
+  public long readUInt32At(long pos) {
+    return readInt32At(pos) & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public float readF32At(long pos) {
+    return buf.getFloat((int) pos);
+  }
+
+  @Override
+  public double readD64At(long pos) {
+    return buf.getDouble((int) pos);
+  }
+
+  @Override
+  public void readFullyAt(long pos, byte[] data) {
+    buf.get((int) pos, data, 0, data.length);
+  }
+
+  @Override
+  public GeoByteBuffer sliceAt(long pos, int len) {
+    return new GeoByteBuffer(buf.slice((int) pos, len));
+  }
+
+}
@@ -0,0 +1,203 @@
+package io.zrz.jgdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link GeoBuffer} over a file in a {@link GeoCachingStore}, reading it
+ * through the blocks cached by the store.
+ *
+ * Like the other file buffers, positional reads can be made from any thread,
+ * while the sequential reads use the position of the instance so are for a
+ * single thread.
+ *
+ */
+
+final class GeoCachedFileBuffer implements GeoBuffer {
+
+  /**
+   * the last block used, so runs of reads from the same block don't go back to
+   * the store.
+   */
+
+  private static final class Block {
+
+    private final long index;
+    private final ByteBuffer buf;
+
+    private Block(long index, ByteBuffer buf) {
+      this.index = index;
+      this.buf = buf;
+    }
+
+  }
+
+  private final GeoCachingStore store;
+  private final String name;
+  private final long len;
+  private final int blockShift;
+  private final long blockMask;
+  private Block last;
+  private long pos;
+
+  GeoCachedFileBuffer(GeoCachingStore store, String name, long len, int blockShift) {
+    this.store = store;
+    this.name = name;
+    this.len = len;
+    this.blockShift = blockShift;
+    this.blockMask = (1L << blockShift) - 1;
+  }
+
+  private ByteBuffer block(long pos) {
+    long index = pos >>> blockShift;
+    Block block = this.last;
+    if (block == null || block.index != index) {
+      block = new Block(index, store.block(name, len, index));
+      this.last = block;
+    }
+    return block.buf;
+  }
+
+  private int offset(long pos) {
+    return (int) (pos & blockMask);
+  }
+
+  @Override
+  public char readChar() {
+    char ch = block(pos).getChar(offset(pos));
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public float readF32() {
+    float ch = readF32At(pos);
+    pos += 4;
+    return ch;
+  }
+
+  @Override
+  public short readInt16() {
+    short ch = readInt16At(pos);
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public int readInt32() {
+    int ch = readInt32At(pos);
+    pos += 4;
+    return ch;
+  }
+
+  @Override
+  public long readUInt32() {
+    return readInt32() & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public double readD64() {
+    double ch = readD64At(pos);
+    pos += 8;
+    return ch;
+  }
+
+  @Override
+  public int readUInt8() {
+    int ch = readUInt8At(pos);
+    pos += 1;
+    return ch;
+  }
+
+  @Override
+  public long remainingBytes() {
+    return len - pos;
+  }
+
+  @Override
+  public void seek(long pos) {
+    this.pos = pos;
+  }
+
+  @Override
+  public void skipBytes(int i) {
+    pos += i;
+  }
+
+  @Override
+  public void readFully(byte[] defaultValue) {
+    readFullyAt(pos, defaultValue);
+    pos += defaultValue.length;
+  }
+
+  @Override
+  public long getFilePointer() {
+    return pos;
+  }
+
+  @Override
+  public GeoCachedFileBuffer duplicate() {
+    return new GeoCachedFileBuffer(store, name, len, blockShift);
+  }
+
+  @Override
+  public void close() {
+    // the blocks belong to the store.
+  }
+
+  // --
+
+  @Override
+  public int readUInt8At(long pos) {
+    return block(pos).get(offset(pos)) & 0xFF;
+  }
+
+  @Override
+  public short readInt16At(long pos) {
+    return block(pos).getShort(offset(pos));
+  }
+
+  @Override
+  public int readInt32At(long pos) {
+    return block(pos).getInt(offset(pos));
+  }
+
+  @Override
+  public long readUInt32At(long pos) {
+    return readInt32At(pos) & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public float readF32At(long pos) {
+    return block(pos).getFloat(offset(pos));
+  }
+
+  @Override
+  public double readD64At(long pos) {
+    return block(pos).getDouble(offset(pos));
+  }
+
+  @Override
+  public void readFullyAt(long pos, byte[] data) {
+    int done = 0;
+    while (done < data.length) {
+      ByteBuffer block = block(pos);
+      int offset = offset(pos);
+      int count = (int) Math.min(data.length - done, (blockMask + 1) - offset);
+      block.get(offset, data, done, count);
+      done += count;
+      pos += count;
+    }
+  }
+
+  /**
+   * The slice is copied to the heap, as a row may span blocks.
+   */
+
+  @Override
+  public GeoByteBuffer sliceAt(long pos, int len) {
+    byte[] data = new byte[len];
+    readFullyAt(pos, data);
+    return new GeoByteBuffer(data);
+  }
+
+}
@@ -0,0 +1,170 @@
+package io.zrz.jgdb;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.NoSuchFileException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Value;
+
+/**
+ * A {@link GeoStore} reading files from a {@link GeoRangeSource} a block at a
+ * time, keeping the most recently used blocks of all the files in memory.
+ *
+ * Each block is read with a few bytes of the next one on the end, so no value
+ * read from a file ever straddles two blocks.
+ *
+ */
+
+public class GeoCachingStore implements GeoStore {
+
+  /**
+   * 64KB blocks.
+   */
+
+  public static final int DEFAULT_BLOCK_SHIFT = 16;
+
+  /**
+   * 64MB of blocks, at the default size.
+   */
+
+  public static final int DEFAULT_MAX_BLOCKS = 1024;
+
+  static final int BLOCK_OVERLAP = 8;
+
+  @Value
+  private static class BlockKey {
+    private String name;
+    private long index;
+  }
+
+  private final GeoRangeSource source;
+  private final int blockShift;
+  private final Map<String, Long> lengths = new ConcurrentHashMap<>();
+
+  /**
+   * guarded by itself.
+   */
+
+  private final LinkedHashMap<BlockKey, ByteBuffer> blocks;
+
+  public GeoCachingStore(final GeoRangeSource source) {
+    this(source, DEFAULT_BLOCK_SHIFT, DEFAULT_MAX_BLOCKS);
+  }
+
+  /**
+   * @param blockShift
+   *          log2 of the size of each block read from the source.
+   * @param maxBlocks
+   *          the number of blocks kept in memory.
+   */
+
+  public GeoCachingStore(final GeoRangeSource source, final int blockShift, final int maxBlocks) {
+    this.source = source;
+    this.blockShift = blockShift;
+    this.blocks = new LinkedHashMap<BlockKey, ByteBuffer>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<BlockKey, ByteBuffer> eldest) {
+        return size() > maxBlocks;
+      }
+    };
+  }
+
+  @Override
+  public boolean exists(final String name) {
+    try {
+      length(name);
+      return true;
+    } catch (final NoSuchFileException e) {
+      return false;
+    } catch (final IOException e) {
+      throw new GeoDBException(e);
+    }
+  }
+
+  @Override
+  public List<String> list() throws IOException {
+    return this.source.list();
+  }
+
+  @Override
+  public GeoBuffer open(final String name) throws IOException {
+    return new GeoCachedFileBuffer(this, name, length(name), this.blockShift);
+  }
+
+  private long length(final String name) throws IOException {
+    final Long len = this.lengths.get(name);
+    if (len != null) {
+      return len;
+    }
+    final long value = this.source.length(name);
+    this.lengths.put(name, value);
+    return value;
+  }
+
+  /**
+   * The given block of a file, read from the source if it's not cached. Only
+   * ever read with absolute positions, so can be shared between threads.
+   */
+
+  ByteBuffer block(final String name, final long len, final long index) {
+
+    final BlockKey key = new BlockKey(name, index);
+
+    synchronized (this.blocks) {
+      final ByteBuffer block = this.blocks.get(key);
+      if (block != null) {
+        return block;
+      }
+    }
+
+    // read outside the lock, so other blocks can still be served. two threads
+    // may end up reading the same block, which is harmless.
+
+    final long start = index << this.blockShift;
+    final int size = (int) Math.min((1L << this.blockShift) + BLOCK_OVERLAP, len - start);
+
+    if (size <= 0) {
+      throw new GeoDBException(new EOFException(String.format("Read at %d past end of %s (%d)", start, name, len)));
+    }
+
+    final ByteBuffer block = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+    try {
+      this.source.read(name, start, block);
+    } catch (final IOException e) {
+      throw new GeoDBException(e);
+    }
+
+    if (block.hasRemaining()) {
+      throw new GeoDBException(new EOFException(String.format("%s truncated at %d", name, start + block.position())));
+    }
+
+    synchronized (this.blocks) {
+      this.blocks.put(key, block);
+    }
+
+    return block;
+
+  }
+
+  /**
+   * Drops all the cached blocks and closes the source.
+   */
+
+  @Override
+  public void close() {
+    synchronized (this.blocks) {
+      this.blocks.clear();
+    }
+    this.source.close();
+  }
+
+}
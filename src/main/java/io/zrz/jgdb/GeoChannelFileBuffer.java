@@ -0,0 +1,348 @@
+package io.zrz.jgdb;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link GeoBuffer} which reads a file through a {@link FileChannel} rather
+ * than mapping it, for environments where mmap isn't available or the address
+ * space is limited.
+ *
+ * Reads go through page aligned direct buffers taken from the
+ * {@link GeoPagePool}, filled with positional reads on the channel. Each thread
+ * gets its own page per file, so the positional reads can be made from any
+ * number of threads at once. The sequential reads use the position of the
+ * instance, so aren't thread safe.
+ *
+ * Every page handed out is tracked, and closing the buffer returns all of them
+ * to the pool, whichever thread they were for, so threads which outlive the
+ * file (e.g. in a pool) don't keep its direct memory. Reads from it or any
+ * cursor over it then fail with an {@link IllegalStateException}; closing it
+ * while another thread is still in the middle of a read is a bug in the
+ * caller, as that thread's page may already be in use by another file.
+ *
+ */
+
+public class GeoChannelFileBuffer implements GeoBuffer {
+
+  /**
+   * A page of the file, only ever used by a single thread.
+   */
+
+  private static final class Page {
+
+    private ByteBuffer buf;
+
+    // the file position of the first byte in the buffer.
+    private long start = -1;
+
+    // the number of valid bytes in the buffer.
+    private int limit;
+
+    private boolean covers(long pos, int len) {
+      return pos >= start && pos + len <= start + limit;
+    }
+
+  }
+
+  /**
+   * The state shared between all the cursors over a file.
+   */
+
+  private static final class Shared {
+
+    private final FileChannel channel;
+    private final long len;
+    private final Queue<Page> pages = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Page> current = ThreadLocal.withInitial(this::allocate);
+
+    private volatile boolean closed;
+
+    private Shared(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.len = channel.size();
+    }
+
+    private Page allocate() {
+      Page page = new Page();
+      page.buf = GeoPagePool.INSTANCE.acquire();
+      pages.add(page);
+      return page;
+    }
+
+    /**
+     * the page for this thread, filled so it contains at least len bytes from
+     * the given position (or up to the end of the file).
+     */
+
+    private Page page(long pos, int len) {
+      if (this.closed) {
+        throw new IllegalStateException("Buffer is closed");
+      }
+      Page page = current.get();
+      if (!page.covers(pos, len)) {
+        fill(page, pos, len);
+      }
+      return page;
+    }
+
+    private void fill(Page page, long pos, int len) {
+
+      long start = pos & ~(GeoPagePool.ALIGNMENT - 1);
+
+      ByteBuffer buf = page.buf;
+      buf.clear();
+
+      // invalidate first, in case the read fails half way.
+      page.start = -1;
+
+      try {
+        read(buf, start);
+      } catch (IOException ex) {
+        throw new GeoDBException(ex);
+      }
+
+      page.start = start;
+      page.limit = buf.position();
+
+      if (!page.covers(pos, len)) {
+        // don't leave the rest of the page from the last fill to be read.
+        page.start = -1;
+        throw new GeoDBException(new EOFException(String.format("Read of %d bytes at %d past end of file (%d)", len, pos, this.len)));
+      }
+
+    }
+
+    /**
+     * reads until the buffer is full or the end of file is reached.
+     */
+
+    private void read(ByteBuffer buf, long pos) throws IOException {
+      if (this.closed) {
+        throw new IllegalStateException("Buffer is closed");
+      }
+      while (buf.hasRemaining()) {
+        int count = channel.read(buf, pos);
+        if (count < 0) {
+          break;
+        }
+        pos += count;
+      }
+    }
+
+    private void close() {
+      this.closed = true;
+      // the entries left in other threads' ThreadLocal maps only hold the
+      // emptied page, not its buffer.
+      for (Page page; (page = pages.poll()) != null;) {
+        GeoPagePool.INSTANCE.release(page.buf);
+        page.buf = null;
+        page.start = -1;
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // nothing to do.
+      }
+    }
+
+  }
+
+  private final Shared shared;
+  private final boolean owner;
+  private long pos;
+
+  public GeoChannelFileBuffer(FileChannel channel) {
+    try {
+      this.shared = new Shared(channel);
+    } catch (IOException e) {
+      throw new GeoDBException(e);
+    }
+    this.owner = true;
+  }
+
+  private GeoChannelFileBuffer(Shared shared) {
+    this.shared = shared;
+    this.owner = false;
+  }
+
+  public static GeoChannelFileBuffer open(Path path) throws IOException {
+    return new GeoChannelFileBuffer(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  @Override
+  public char readChar() {
+    Page page = shared.page(pos, 2);
+    char ch = page.buf.getChar((int) (pos - page.start));
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public float readF32() {
+    float ch = readF32At(pos);
+    pos += 4;
+    return ch;
+  }
+
+  @Override
+  public short readInt16() {
+    short ch = readInt16At(pos);
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public int readInt32() {
+    int ch = readInt32At(pos);
+    pos += 4;
+    return ch;
+  }
+
+  @Override
+  public long readUInt32() {
+    return readInt32() & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public double readD64() {
+    double ch = readD64At(pos);
+    pos += 8;
+    return ch;
+  }
+
+  @Override
+  public int readUInt8() {
+    int ch = readUInt8At(pos);
+    pos += 1;
+    return ch;
+  }
+
+  @Override
+  public long remainingBytes() {
+    return shared.len - pos;
+  }
+
+  @Override
+  public void seek(long pos) {
+    this.pos = pos;
+  }
+
+  @Override
+  public void skipBytes(int i) {
+    pos += i;
+  }
+
+  @Override
+  public void readFully(byte[] defaultValue) {
+    readFullyAt(pos, defaultValue);
+    pos += defaultValue.length;
+  }
+
+  @Override
+  public long getFilePointer() {
+    return pos;
+  }
+
+  @Override
+  public GeoChannelFileBuffer duplicate() {
+    return new GeoChannelFileBuffer(shared);
+  }
+
+  @Override
+  public void close() {
+    if (owner) {
+      shared.close();
+    }
+  }
+
+  // --
+
+  @Override
+  public int readUInt8At(long pos) {
+    Page page = shared.page(pos, 1);
+    return page.buf.get((int) (pos - page.start)) & 0xFF;
+  }
+
+  @Override
+  public short readInt16At(long pos) {
+    Page page = shared.page(pos, 2);
+    return page.buf.getShort((int) (pos - page.start));
+  }
+
+  @Override
+  public int readInt32At(long pos) {
+    Page page = shared.page(pos, 4);
+    return page.buf.getInt((int) (pos - page.start));
+  }
+
+  @Override
+  public long readUInt32At(long pos) {
+    return readInt32At(pos) & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public float readF32At(long pos) {
+    Page page = shared.page(pos, 4);
+    return page.buf.getFloat((int) (pos - page.start));
+  }
+
+  @Override
+  public double readD64At(long pos) {
+    Page page = shared.page(pos, 8);
+    return page.buf.getDouble((int) (pos - page.start));
+  }
+
+  /**
+   * Small reads are copied out of the page, anything larger than a page is read
+   * straight into the array.
+   */
+
+  @Override
+  public void readFullyAt(long pos, byte[] data) {
+
+    if (data.length > GeoPagePool.PAGE_SIZE) {
+      ByteBuffer buf = ByteBuffer.wrap(data);
+      try {
+        shared.read(buf, pos);
+      } catch (IOException ex) {
+        throw new GeoDBException(ex);
+      }
+      if (buf.hasRemaining()) {
+        throw new GeoDBException(new EOFException(String.format("Read at %d past end of file (%d)", pos, shared.len)));
+      }
+      return;
+    }
+
+    int done = 0;
+
+    while (done < data.length) {
+      Page page = shared.page(pos, 1);
+      int offset = (int) (pos - page.start);
+      int count = Math.min(data.length - done, page.limit - offset);
+      page.buf.get(offset, data, done, count);
+      done += count;
+      pos += count;
+    }
+
+  }
+
+  /**
+   * The slice is copied to the heap with a single read, so decoding a row
+   * doesn't go back to the channel.
+   */
+
+  @Override
+  public GeoByteBuffer sliceAt(long pos, int len) {
+    byte[] data = new byte[len];
+    readFullyAt(pos, data);
+    return new GeoByteBuffer(data);
+  }
+
+}
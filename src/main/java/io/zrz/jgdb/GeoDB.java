@@ -43,7 +43,9 @@ public interface GeoDB extends AutoCloseable {
    * Fetches a layer by it's name.
    * 
    * A layer will be kept open until the database is closed. If you prefer to
-   * close it to release resources, use GeoLayer#close().
+   * close it to release resources, use GeoLayer#close(). The same layer is
+   * shared by everyone who asks for it, so it's only closed once each of them
+   * has closed it.
    * 
    * The implementation uses mmap(), and very little (real) memory on a per
    * layer basis, so you most likely don't need to.
@@ -1,6 +1,5 @@
 package io.zrz.jgdb;
 
-import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,8 +68,8 @@ final class GeoDB_R4 extends AbstractGeoDB {
    * @param dir
    */
 
-  GeoDB_R4(Path dir) {
-    super(dir);
+  GeoDB_R4(GeoStore store) {
+    super(store);
   }
 
   /**
@@ -164,8 +163,8 @@ final class GeoDB_R4 extends AbstractGeoDB {
 
   // ---
 
-  public static GeoDB_R4 open(Path dir) {
-    final GeoDB_R4 db = new GeoDB_R4(dir);
+  public static GeoDB_R4 open(GeoStore store) {
+    final GeoDB_R4 db = new GeoDB_R4(store);
     db.open();
     return db;
   }
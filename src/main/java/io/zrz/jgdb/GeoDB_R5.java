@@ -1,6 +1,5 @@
 package io.zrz.jgdb;
 
-import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -33,8 +32,8 @@ final class GeoDB_R5 extends AbstractGeoDB {
 
     private V10_Items items;
 
-    GeoDB_R5(Path dir) {
-        super(dir);
+    GeoDB_R5(GeoStore store) {
+        super(store);
     }
 
     @Override
@@ -109,8 +108,8 @@ final class GeoDB_R5 extends AbstractGeoDB {
                 && !catalog.containsKey(m.getKey())).map(Map.Entry::getKey).collect(Collectors.toList());
     }
 
-    public static GeoDB_R5 open(Path dir) {
-        final GeoDB_R5 db = new GeoDB_R5(dir);
+    public static GeoDB_R5 open(GeoStore store) {
+        final GeoDB_R5 db = new GeoDB_R5(store);
         db.open();
         return db;
     }
@@ -143,27 +142,42 @@ final class GeoDB_R5 extends AbstractGeoDB {
 
             try (GeoTable table = layer("GDB_Items")) {
 
+                FieldRef name = table.fieldRef("Name");
+                FieldRef uuid = table.fieldRef("UUID");
+                FieldRef type = table.fieldRef("Type");
+                FieldRef physicalName = table.fieldRef("PhysicalName");
+                FieldRef path = table.fieldRef("Path");
+                FieldRef datasetSubtype1 = table.fieldRef("DatasetSubtype1");
+                FieldRef datasetSubtype2 = table.fieldRef("DatasetSubtype2");
+                FieldRef datasetInfo1 = table.fieldRef("DatasetInfo1");
+                FieldRef datasetInfo2 = table.fieldRef("DatasetInfo2");
+                FieldRef properties = table.fieldRef("Properties");
+                FieldRef shape = table.fieldRef("Shape");
+
                 table.forEach((RowConsumer) feature -> {
-                    if (!feature.getValue("Name").isNulled()) {
+                    // null for an empty name as well as a null one, as
+                    // getValue() reads both.
+                    Utf8Slice itemName = feature.getUtf8(name);
+                    if (itemName != null) {
                         Item.ItemBuilder ib = Item.builder();
-                        ib.uuid(feature.getValue("UUID").uuidValue());
-                        ib.type(feature.getValue("Type").stringValue());
-                        ib.physicalName(feature.getValue("PhysicalName").stringValue());
-                        if (!feature.getValue("Path").isNulled())
-                            ib.path(feature.getValue("Path").stringValue());
+                        ib.uuid(feature.getValue(uuid).uuidValue());
+                        ib.type(feature.getValue(type).stringValue());
+                        ib.physicalName(feature.getValue(physicalName).stringValue());
+                        if (!feature.getValue(path).isNulled())
+                            ib.path(feature.getValue(path).stringValue());
 
-                        ib.datasetSubtype1(feature.getValue("DatasetSubtype1").intValue());
-                        ib.datasetSubtype2(feature.getValue("DatasetSubtype2").intValue());
-                        ib.datasetInfo1(feature.getValue("DatasetInfo1").stringValue());
-                        ib.datasetInfo2(feature.getValue("DatasetInfo2").stringValue());
+                        ib.datasetSubtype1(feature.getValue(datasetSubtype1).intValue());
+                        ib.datasetSubtype2(feature.getValue(datasetSubtype2).intValue());
+                        ib.datasetInfo1(feature.getValue(datasetInfo1).stringValue());
+                        ib.datasetInfo2(feature.getValue(datasetInfo2).stringValue());
 
-                        ib.properties(feature.getValue("Properties").intValue());
+                        ib.properties(feature.getValue(properties).intValue());
 
-                        if (!feature.getValue("Shape").isNulled()) {
-                            ib.shape(feature.getValue("Shape").geometryValue());
+                        if (!feature.getValue(shape).isNulled()) {
+                            ib.shape(feature.getValue(shape).geometryValue());
                         }
 
-                        items.put(feature.getValue("Name").stringValue(), ib.build());
+                        items.put(itemName.toString(), ib.build());
 
                     }
 
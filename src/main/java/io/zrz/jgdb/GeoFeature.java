@@ -1,55 +1,70 @@
 package io.zrz.jgdb;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import lombok.Builder;
-import lombok.Singular;
-
 /**
- * 
+ * A row of a table, which keeps the values of its fields once they've been
+ * decoded. See {@link GeoRow}.
+ *
+ * Features may be read from any number of threads.
+ *
  * @author Theo Zourzouvillys
  *
  */
 
-@Builder
-public class GeoFeature {
+public class GeoFeature extends GeoRow {
 
-  private long featureId;
+  /**
+   * marks a value which hasn't been decoded yet.
+   */
 
-  private List<GeoField> fields;
+  private static final Object UNREAD = new Object();
 
-  @Singular
-  private List<Object> values;
+  /**
+   * the decoded values of the fields in the projection. guarded by this.
+   */
 
-  public GeoFieldValue getValue(int fieldId) {
-    return new GeoFieldValue(fields.get(fieldId), values.get(fieldId));
+  private Object[] values;
+
+  GeoFeature(long featureId, FileGDBTable table, FileGDBTable.Projection projection, long row, int length) {
+    super(table, projection);
+    moveTo(featureId, row, length);
   }
 
-  public GeoFieldValue getValue(String name) {
-    return getValue(getFieldId(name));
+  @Override
+  synchronized long position(int column) {
+    return super.position(column);
   }
 
-  public int getFieldId(String name) {
-    for (int i = 0; i < fields.size(); ++i) {
-      if (fields.get(i).getName().equalsIgnoreCase(name)) {
-        return i;
-      }
+  /**
+   * the value of the given field of the projection, decoding it if it hasn't
+   * been already.
+   */
+
+  @Override
+  synchronized Object value(int fieldId) {
+
+    if (this.values == null) {
+      this.values = new Object[getFields().size()];
+      Arrays.fill(this.values, UNREAD);
     }
-    throw new IllegalArgumentException(name);
-  }
 
-  public long getFeatureId() {
-    return featureId;
-  }
+    Object value = this.values[fieldId];
+
+    if (value == UNREAD) {
+      value = super.value(fieldId);
+      this.values[fieldId] = value;
+    }
+
+    return value;
 
-  public List<GeoField> getFields() {
-    return this.fields;
   }
 
   /**
-   * 
+   *
    */
 
   public String toString() {
@@ -58,9 +73,13 @@ public class GeoFeature {
 
     sb.append("[").append(this.featureId).append("] ");
 
+    List<GeoField> fields = getFields();
+
     for (int i = 0; i < fields.size(); ++i) {
 
-      if (values.get(i) == null) {
+      Object value = value(i);
+
+      if (value == null) {
         continue;
       }
 
@@ -68,7 +87,7 @@ public class GeoFeature {
         sb.append(", ");
       }
 
-      String desc = values.get(i).toString();
+      String desc = value.toString();
 
       sb.append(fields.get(i).getName()).append("=").append(desc.substring(0, Math.min(30, desc.length())));
 
@@ -82,18 +101,20 @@ public class GeoFeature {
 
     Map<String, R> ret = new HashMap<>();
 
+    List<GeoField> fields = getFields();
+
     for (int i = 0; i < fields.size(); ++i) {
       GeoField f = fields.get(i);
-      Object value = values.get(i);
-      
+      Object value = value(i);
+
       if (value != null) {
-        
+
         R v = f.getType().apply(value, converter);
-        
+
         if (v != null) {
           ret.put(f.getName(), v);
         }
-        
+
       }
     }
 
@@ -34,9 +34,20 @@ public class GeoFieldValue {
     return (byte[]) this.value;
   }
 
+  /**
+   * parses the XML to a new document each time it's called; see
+   * {@link #xmlHandle()} to read it some other way.
+   */
+
   public Document xmlValue() {
-    return (Document) this.value;
+    if (this.value == null) {
+      return null;
+    }
+    return ((GeoXml) this.value).getDocument();
+  }
 
+  public GeoXml xmlHandle() {
+    return (GeoXml) this.value;
   }
 
   public byte byteValue() {
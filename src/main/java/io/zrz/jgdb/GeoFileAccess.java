@@ -0,0 +1,50 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+/**
+ * How the files of a geodatabase are read.
+ *
+ */
+
+public enum GeoFileAccess {
+
+  /**
+   * Memory map each file, see {@link GeoMappedFileBuffer}. The default.
+   */
+
+  MMAP,
+
+  /**
+   * Read each file through a {@link java.nio.channels.FileChannel} into pooled
+   * buffers, see {@link GeoChannelFileBuffer}. Uses no address space beyond the
+   * buffers themselves.
+   */
+
+  CHANNEL;
+
+  /**
+   * Opens a buffer over the given file.
+   */
+
+  GeoBuffer open(Path path) throws IOException {
+    switch (this) {
+      case MMAP: {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "r");
+        try {
+          return new GeoMappedFileBuffer(file, file.length());
+        } catch (GeoDBException ex) {
+          file.close();
+          throw ex;
+        }
+      }
+      case CHANNEL:
+        return GeoChannelFileBuffer.open(path);
+      default:
+        throw new IllegalStateException(this.name());
+    }
+  }
+
+}
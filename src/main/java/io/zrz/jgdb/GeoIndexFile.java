@@ -1,8 +1,9 @@
 package io.zrz.jgdb;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Iterator;
 import java.util.function.Predicate;
@@ -37,13 +38,57 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
 
   private final GeoBuffer reader;
   private Header header;
-  private RandomAccessFile file;
   private BitSet blockmap;
 
-  public GeoIndexFile(final Path path) throws IOException {
+  /**
+   * for each block in the blockmap, the number of present blocks before it, so
+   * the position of a row in the index can be found without counting them. One
+   * longer than the blockmap, ending with the number of present blocks.
+   */
 
-    this.file = new RandomAccessFile(path.toFile(), "r");
-    this.reader = new GeoMappedFileBuffer(this.file, file.length());
+  private int[] blockRank;
+
+  /**
+   * the present rows in the order they're stored in the table, built the first
+   * time it's needed.
+   */
+
+  private volatile PhysicalOrder physicalOrder;
+
+  /**
+   * The present rows sorted by their offset in the .gdbtable.
+   */
+
+  static final class PhysicalOrder {
+
+    /**
+     * the (one based) OBJECTIDs of the rows.
+     */
+
+    final int[] ids;
+
+    /**
+     * the offset of each row, in ascending order.
+     */
+
+    final long[] offsets;
+
+    private PhysicalOrder(int[] ids, long[] offsets) {
+      this.ids = ids;
+      this.offsets = offsets;
+    }
+
+  }
+
+  /**
+   * @param reader
+   *          the buffer to read the .gdbtablx from, which is closed along with
+   *          this index.
+   */
+
+  public GeoIndexFile(final GeoBuffer reader) throws IOException {
+
+    this.reader = reader;
     this.header = this.readHeader();
 
     if (this.header.getSizeOffset() < 4 || header.getSizeOffset() > 6) {
@@ -53,7 +98,7 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
     if (header.getN1024BlocksPresent() != 0) {
 
       // seek
-      reader.seek(16 + header.getSizeOffset() * header.getN1024BlocksPresent() * 1024);
+      reader.seek(16 + (long) header.getSizeOffset() * header.getN1024BlocksPresent() * 1024);
 
       int magic = (int) reader.readUInt32();
       int nBitsForBlockMap = (int) reader.readUInt32();
@@ -91,12 +136,19 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
         reader.readFully(data);
         this.blockmap = BitSet.valueOf(data);
 
+        this.blockRank = new int[nBitsForBlockMap + 1];
+
         int nCountBlocks = 0;
 
-        for (int i = 0; i < nBitsForBlockMap; i++) {
-          nCountBlocks += blockmap.get(i) ? 1 : 0;
+        for (int i = 0; i < nBitsForBlockMap; ++i) {
+          blockRank[i] = nCountBlocks;
+          if (blockmap.get(i)) {
+            ++nCountBlocks;
+          }
         }
 
+        blockRank[nBitsForBlockMap] = nCountBlocks;
+
         if (nCountBlocks != header.getN1024BlocksPresent()) {
           throw new GeoDBException(String.format("free page bitmap corrupt? %d != %d", nCountBlocks, header.getN1024BlocksPresent()));
         }
@@ -107,11 +159,47 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
 
   }
 
+  /**
+   * Creates an index over rows found by walking the table (see
+   * {@link FileGDBTable#findRows()}), for tables whose .gdbtablx is missing.
+   * The rows are numbered from 1 in the order they're stored, which only
+   * matches their real OBJECTIDs if none have been deleted.
+   */
+
+  static GeoIndexFile recover(long[] offsets) throws IOException {
+
+    int blocks = (offsets.length + 1023) / 1024;
+
+    long entries = 16 + (long) blocks * 1024 * 6;
+    long size = entries + (blocks > 0 ? 16 : 0);
+
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new GeoDBException(String.format("Too many rows (%d) to rebuild the index in memory", offsets.length));
+    }
+
+    // an in-memory .gdbtablx, with 6 byte offsets and no block map.
+    ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+    buf.putInt(3).putInt(blocks).putInt(offsets.length).putInt(6);
+
+    for (long offset : offsets) {
+      buf.putInt((int) offset).putShort((short) (offset >>> 32));
+    }
+
+    if (blocks > 0) {
+      buf.position((int) entries);
+      buf.putInt(0).putInt(blocks).putInt(blocks).putInt(0);
+    }
+
+    return new GeoIndexFile(new GeoByteBuffer(buf.array()));
+
+  }
+
   public Header readHeader() throws IOException {
 
-    final int magic = Integer.reverseBytes(reader.readInt32());
+    final int magic = reader.readInt32();
 
-    if (magic != 0x3000000) {
+    if (magic != 3) {
       throw new IllegalArgumentException("Invalid Magic");
     }
 
@@ -128,25 +216,17 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
   public void scan(Predicate<Long> acceptor, OffsetConsumer listener) {
 
     int id = 0;
-    int missing = 0;
 
     while (id < this.header.getNumberOfRows()) {
 
-      if (this.blockmap != null) {
-
-        int iBlock = id / 1024;
-
-        if (!blockmap.get(iBlock)) {
-          id += 1024;
-          missing += 1024;
-          continue;
-        }
-
+      if (this.blockmap != null && !blockmap.get(id / 1024)) {
+        id = nextPresent(id);
+        continue;
       }
 
       if (acceptor.test((long) id)) {
 
-        long offset = readIndexAt(id - missing);
+        long offset = readIndexAt(indexOf(id));
 
         if (offset >= 0) {
           listener.accept(id + 1, offset);
@@ -160,51 +240,213 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
 
   }
 
-  int getFeatureOffset(int id) {
+  long getFeatureOffset(int id) {
 
     if (id < 0 || id >= header.getNumberOfRows()) {
       return -1;
     }
 
-    if (this.blockmap != null) {
+    if (this.blockmap != null && !blockmap.get(id / 1024)) {
+      return -1;
+    }
+
+    return readIndexAt(indexOf(id));
+
+  }
+
+  /**
+   * the number of rows in the index, including deleted ones.
+   */
+
+  int getNumberOfRows() {
+    return header.getNumberOfRows();
+  }
+
+  /**
+   * the given row if it's in a present block, else the first row of the next
+   * present block (or the number of rows if there isn't one).
+   */
+
+  int nextPresentRow(int id) {
+    if (this.blockmap == null || id >= header.getNumberOfRows() || blockmap.get(id / 1024)) {
+      return id;
+    }
+    return nextPresent(id);
+  }
+
+  /**
+   * the number of entries in the index for the rows between the given (zero
+   * based) IDs, from the block ranks without reading any of them. An upper
+   * bound on the rows there, as rows deleted from a present block still have
+   * an entry.
+   */
+
+  long countEntries(int from, int to) {
+    if (this.blockmap == null) {
+      return Math.max(0, to - from);
+    }
+    return Math.max(0, entriesBefore(to) - entriesBefore(from));
+  }
+
+  private long entriesBefore(int id) {
+    int block = Math.min(id / 1024, blockRank.length - 1);
+    long entries = blockRank[block] * 1024L;
+    if (block < blockRank.length - 1 && blockmap.get(block)) {
+      entries += id % 1024;
+    }
+    return entries;
+  }
+
+  /**
+   * The present rows in the order they're stored in the table, for reading it
+   * from start to end. Only sorted when the rows aren't in order already.
+   */
+
+  PhysicalOrder getPhysicalOrder() {
+
+    PhysicalOrder order = this.physicalOrder;
+
+    if (order != null) {
+      return order;
+    }
+
+    int[] ids = new int[1024];
+    long[] offsets = new long[1024];
+    int count = 0;
+    boolean sorted = true;
+
+    for (int id = nextPresentRow(0); id < header.getNumberOfRows(); id = nextPresentRow(id + 1)) {
+
+      long offset = readIndexAt(indexOf(id));
+
+      if (offset < 0) {
+        continue;
+      }
+
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, count * 2);
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+
+      sorted &= (count == 0 || offsets[count - 1] < offset);
+
+      ids[count] = id + 1;
+      offsets[count] = offset;
+      ++count;
+
+    }
+
+    ids = Arrays.copyOf(ids, count);
+    offsets = Arrays.copyOf(offsets, count);
+
+    if (!sorted) {
+      sort(offsets, ids, 0, count);
+    }
+
+    // racing threads build the same thing, so either can win.
+    order = new PhysicalOrder(ids, offsets);
+    this.physicalOrder = order;
+    return order;
+
+  }
+
+  /**
+   * sorts the range of offsets, keeping the ids in step.
+   */
+
+  static void sort(long[] offsets, int[] ids, int from, int to) {
+
+    while (to - from > 16) {
 
-      int iBlock = id / 1024;
+      long pivot = offsets[(from + to) >>> 1];
+      int i = from;
+      int j = to - 1;
 
-      if (!blockmap.get(iBlock)) {
-        return -1;
+      while (i <= j) {
+        while (offsets[i] < pivot) {
+          ++i;
+        }
+        while (offsets[j] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          swap(offsets, ids, i++, j--);
+        }
       }
 
-      int nCountBlocksBefore = 0;
+      // recurse into the smaller side, loop on the larger.
+      if (j - from < to - i) {
+        sort(offsets, ids, from, j + 1);
+        from = i;
+      } else {
+        sort(offsets, ids, i, to);
+        to = j + 1;
+      }
+
+    }
 
-      for (int i = 0; i < iBlock; i++) {
-        nCountBlocksBefore += blockmap.get(i) ? 1 : 0;
+    for (int i = from + 1; i < to; ++i) {
+      for (int j = i; j > from && offsets[j - 1] > offsets[j]; --j) {
+        swap(offsets, ids, j, j - 1);
       }
+    }
+
+  }
+
+  private static void swap(long[] offsets, int[] ids, int a, int b) {
+    long o = offsets[a];
+    offsets[a] = offsets[b];
+    offsets[b] = o;
+    int id = ids[a];
+    ids[a] = ids[b];
+    ids[b] = id;
+  }
 
-      id = (nCountBlocksBefore * 1024) + (id % 1024);
+  /**
+   * the position in the index of the given row, which must be in a present
+   * block.
+   */
 
+  private long indexOf(int id) {
+    if (this.blockmap == null) {
+      return id;
     }
+    return (blockRank[id / 1024] * 1024L) + (id % 1024);
+  }
 
-    return readIndexAt(id);
+  /**
+   * the first row of the next present block after the one the given row is in,
+   * or the number of rows if there are no more.
+   */
 
+  private int nextPresent(int id) {
+    int next = blockmap.nextSetBit(id / 1024 + 1);
+    if (next < 0 || next >= blockRank.length - 1) {
+      return header.getNumberOfRows();
+    }
+    return (int) Math.min((long) next * 1024, header.getNumberOfRows());
   }
 
-  private int readIndexAt(int id) {
+  /**
+   * reads the offset of the given row. only uses positional reads, so is safe
+   * to call from multiple threads.
+   */
 
-    int pos = (16 + id * this.header.getSizeOffset());
+  private long readIndexAt(long id) {
 
-    reader.seek(pos);
+    long pos = 16 + id * this.header.getSizeOffset();
 
-    long offset = reader.readInt32();
+    long offset = reader.readUInt32At(pos);
 
     switch (header.getSizeOffset()) {
       case 4:
         break;
       case 5:
-        offset |= ((int) reader.readUInt8()) << 32;
+        offset |= ((long) reader.readUInt8At(pos + 4)) << 32;
         break;
       case 6:
-        offset |= ((int) reader.readUInt8()) << 32;
-        offset |= ((int) reader.readUInt8()) << 40;
+        offset |= ((long) reader.readUInt8At(pos + 4)) << 32;
+        offset |= ((long) reader.readUInt8At(pos + 5)) << 40;
         break;
       default:
         throw new GeoDBException("internal error");
@@ -213,19 +455,17 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
 
     if (offset == 0) {
       return -1;
-    } else if (offset < 0 || offset >= Integer.MAX_VALUE) {
-      throw new IllegalArgumentException(String.format("Invalid offset: %d", offset));
     }
 
-    return (int) offset;
+    return offset;
+  }
+
+  public void prefetch() {
+    this.reader.prefetch(0, Long.MAX_VALUE);
   }
 
   public void close() {
-    try {
-      this.file.close();
-    } catch (final IOException e) {
-      // nothing ..
-    }
+    this.reader.close();
   }
 
   @Override
@@ -237,7 +477,6 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
 
     private IndexEntry next = null;
     private int id = 0;
-    private int missing = 0;
     private boolean eof = false;
 
     @Override
@@ -288,19 +527,12 @@ public class GeoIndexFile implements Iterable<IndexEntry> {
 
       while (id < header.getNumberOfRows()) {
 
-        if (blockmap != null) {
-
-          int iBlock = id / 1024;
-
-          if (!blockmap.get(iBlock)) {
-            id += 1024;
-            missing += 1024;
-            continue;
-          }
-
+        if (blockmap != null && !blockmap.get(id / 1024)) {
+          id = nextPresent(id);
+          continue;
         }
 
-        long offset = readIndexAt(id - missing);
+        long offset = readIndexAt(indexOf(id));
 
         ++id;
 
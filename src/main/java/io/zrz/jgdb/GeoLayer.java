@@ -1,5 +1,7 @@
 package io.zrz.jgdb;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Spliterator;
@@ -7,9 +9,19 @@ import java.util.Spliterators;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import io.zrz.jgdb.shape.Envelope;
+import io.zrz.jgdb.shape.GeometryValue;
+
 /**
  * Represents a user-defined layer within the geodatabase.
  * 
+ * A layer can be shared between threads: fetching and iterating features only
+ * reads the underlying files through cursors private to each call.
+ * 
+ * Features read their fields from the layer's files as they're asked for, so
+ * must not be used once the layer is closed; reading a field then throws an
+ * {@link IllegalStateException}.
+ * 
  * @author Theo Zourzouvillys
  *
  */
@@ -26,6 +38,39 @@ public interface GeoLayer extends Iterable<GeoFeature> {
 
   GeoFeature getFeature(int featureId);
 
+  /**
+   * Fetches a batch of features by their Feature IDs, e.g the hits of a search.
+   * 
+   * The features are read in the order they're stored in the file rather than
+   * the order they're asked for, which keeps the I/O mostly sequential.
+   * 
+   * @return The features, in the same order as the IDs, with null for any that
+   *         don't exist.
+   */
+
+  default List<GeoFeature> getFeatures(int[] featureIds) {
+    List<GeoFeature> features = new ArrayList<>(featureIds.length);
+    for (int featureId : featureIds) {
+      features.add(getFeature(featureId));
+    }
+    return features;
+  }
+
+  /**
+   * Streams a batch of features by their Feature IDs to the consumer, in the
+   * order they're stored in the file so nothing needs holding on to. IDs that
+   * don't exist are skipped.
+   */
+
+  default void getFeatures(int[] featureIds, RowConsumer consumer) {
+    for (int featureId : featureIds) {
+      GeoFeature feature = getFeature(featureId);
+      if (feature != null) {
+        consumer.accept(feature);
+      }
+    }
+  }
+
   /**
    * Fetches the number of features in this layer.
    */
@@ -56,8 +101,131 @@ public interface GeoLayer extends Iterable<GeoFeature> {
 
   List<GeoField> getFields();
 
+  /**
+   * A handle on the named field, to read it from each feature without looking
+   * it up by name every time. By default the field is looked up by name
+   * anyway.
+   */
+
+  default FieldRef fieldRef(String name) {
+    getField(name);
+    return new FieldRef(name, null, -1);
+  }
+
+  /**
+   * A view of this layer with only the named fields, in the order given, for
+   * reading a few fields without decoding the rest.
+   * 
+   * @throws UnsupportedOperationException
+   *           if the layer can't select fields.
+   */
+
+  default GeoLayer select(String... fieldNames) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * The features whose shape has a bounding box intersecting the envelope. By
+   * default this checks every feature; layers with a spatial index only check
+   * the features it returns.
+   */
+
+  default List<GeoFeature> query(Envelope envelope) {
+
+    List<GeoFeature> features = new ArrayList<>();
+    int shape = getFields().indexOf(getShapeField());
+
+    if (shape < 0) {
+      return features;
+    }
+
+    for (GeoFeature feature : this) {
+      GeometryValue geom = feature.getValue(shape).geometryValue();
+      Envelope bounds = (geom == null) ? null : Envelope.of(geom);
+      if (bounds != null && bounds.intersects(envelope)) {
+        features.add(feature);
+      }
+    }
+
+    return features;
+
+  }
+
+  /**
+   * The attribute index over the given field, for looking features up by value
+   * without scanning the layer.
+   * 
+   * @return The index, or absent if the field isn't indexed.
+   */
+
+  default Optional<GeoAttributeIndex> getAttributeIndex(String fieldName) {
+    return Optional.empty();
+  }
+
   void close();
 
+  /**
+   * Shares one instance of each distinct value of the named string fields
+   * between the features read, for fields with few distinct values (codes,
+   * states, statuses). Only a hint: a field with too many distinct values goes
+   * back to decoding each one, and by default nothing is done.
+   * 
+   * @throws IllegalArgumentException
+   *           if a field doesn't exist or isn't a string.
+   */
+
+  default void intern(String... fieldNames) {
+  }
+
+  /**
+   * Loads the files backing this layer into memory ahead of time, for callers
+   * which know they're about to read all of it. Only a hint: files which aren't
+   * mapped are left alone.
+   */
+
+  default void prefetch() {
+  }
+
+  /**
+   * A cursor over the features in OBJECTID order, which reads each one in turn
+   * without allocating a new feature for it.
+   *
+   * @throws UnsupportedOperationException
+   *           if the layer doesn't support cursors.
+   */
+
+  default RowCursor cursor() {
+    return cursor(GeoScanOrder.OBJECTID);
+  }
+
+  /**
+   * A cursor over the features in the given order.
+   *
+   * @throws UnsupportedOperationException
+   *           if the layer doesn't support cursors.
+   */
+
+  default RowCursor cursor(GeoScanOrder order) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Iterates the features in the given order. By default every order is
+   * OBJECTID order.
+   */
+
+  default Iterator<GeoFeature> iterator(GeoScanOrder order) {
+    return iterator();
+  }
+
+  /**
+   * A sequential stream of the features in the given order.
+   */
+
+  default Stream<GeoFeature> stream(GeoScanOrder order) {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(order), Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
   /**
    * Creates a {@link Spliterator} over the elements described by this
    * {@code Iterable}.
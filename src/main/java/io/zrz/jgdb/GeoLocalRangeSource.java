@@ -0,0 +1,52 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@link GeoRangeSource} over a local folder, opening the file for each read
+ * as a remote store would make a request for each.
+ *
+ */
+
+final class GeoLocalRangeSource implements GeoRangeSource {
+
+  private final Path dir;
+
+  GeoLocalRangeSource(final Path dir) {
+    this.dir = dir;
+  }
+
+  @Override
+  public List<String> list() throws IOException {
+    try (Stream<Path> files = Files.list(this.dir)) {
+      return files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+    }
+  }
+
+  @Override
+  public long length(final String name) throws IOException {
+    return Files.size(this.dir.resolve(name));
+  }
+
+  @Override
+  public void read(final String name, long pos, final ByteBuffer dst) throws IOException {
+    try (FileChannel channel = FileChannel.open(this.dir.resolve(name), StandardOpenOption.READ)) {
+      while (dst.hasRemaining()) {
+        final int count = channel.read(dst, pos);
+        if (count < 0) {
+          break;
+        }
+        pos += count;
+      }
+    }
+  }
+
+}
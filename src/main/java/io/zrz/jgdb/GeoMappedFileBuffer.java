@@ -2,216 +2,521 @@ package io.zrz.jgdb;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link GeoBuffer} over a memory mapped file.
+ *
+ * A single {@link MappedByteBuffer} can't address more than 2GB, so the file
+ * is mapped as a series of fixed size chunks and all positions are 64 bit.
+ * Each chunk overlaps the next by a few bytes, so reading a primitive never
+ * has to straddle two chunks.
+ *
+ * The mapping itself is never modified after construction, and all reads use
+ * absolute positions on it, so the positional reads, which are how tables are
+ * read, can be made from any number of threads at once. The sequential reads
+ * use the position of the instance, so aren't thread safe; a value decoded
+ * that way (a geometry) is read through its own {@link #duplicate()}.
+ *
+ * The buffer and each of its duplicates hold a reference to the mapping, and
+ * the file is only unmapped (rather than waiting for the GC) once the last of
+ * them is closed. Slices are copied rather than pointing into the mapping, so
+ * nothing else can be left reading it. Reads from a closed buffer fail with
+ * an {@link IllegalStateException}; closing one while another thread is still
+ * in the middle of reading from it is a bug in the caller.
+ *
+ * The rows of a table are reported through {@link #accessed(long, long)} as
+ * they're positioned on, and watched for a sequential scan: once enough rows
+ * have followed each other through the file, the pages ahead of the scan are
+ * loaded on a background thread. Lookups jumping around the file don't trigger
+ * any of this.
+ *
+ */
 
 public class GeoMappedFileBuffer implements GeoBuffer {
 
-  private long len;
-  private int pos;
-  private MappedByteBuffer map;
-  private RandomAccessFile file;
+  /**
+   * 1GB chunks by default.
+   */
+
+  static final int DEFAULT_CHUNK_SHIFT = 30;
+
+  /**
+   * The largest primitive we read (a float64).
+   */
+
+  private static final int CHUNK_OVERLAP = 8;
+
+  /**
+   * Unsafe.invokeCleaner, bound to the instance, or null if it's not available
+   * in which case mappings are released by the GC as before.
+   */
+
+  private static final MethodHandle UNMAPPER = unmapper();
+
+  /**
+   * the number of consecutive rows, each starting at most
+   * {@link #READAHEAD_GAP} after the end of the one before, before we consider
+   * it a sequential scan.
+   */
+
+  private static final int READAHEAD_THRESHOLD = 16;
+
+  private static final long READAHEAD_GAP = 64 * 1024;
+
+  /**
+   * How far ahead of a scan pages are loaded.
+   */
+
+  private static final long READAHEAD_WINDOW = 8 * 1024 * 1024;
+
+  private static final Executor READAHEAD_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "jgdb-readahead");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * The mapping, shared between the buffer and all its duplicates.
+   *
+   * The readahead counters are updated without synchronization by any thread
+   * reading the file, so are only ever a heuristic. Loading pages and
+   * unmapping both lock this, so pages are never touched once unmapped. The
+   * count of users isn't locked, so cursors can be made for each read without
+   * contending on it.
+   */
+
+  private static final class Mapping {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * the buffer and each of its duplicates which haven't been closed.
+     */
+
+    private final AtomicInteger users = new AtomicInteger(1);
+
+    // guarded by this.
+    private boolean unmapped;
+
+    private long lastEnd = -1;
+    private int sequential;
+    private long loadedTo;
+
+    private Mapping(RandomAccessFile file, MappedByteBuffer[] chunks) {
+      this.file = file;
+      this.chunks = chunks;
+    }
+
+  }
+
+  private final long len;
+  private final int chunkShift;
+  private final long chunkMask;
+  private final MappedByteBuffer[] chunks;
+  private final Mapping mapping;
+  private long pos;
+
+  private volatile boolean closed;
 
   public GeoMappedFileBuffer(RandomAccessFile file, long len) {
-    this.file = file;
+    this(file, len, DEFAULT_CHUNK_SHIFT);
+  }
+
+  GeoMappedFileBuffer(RandomAccessFile file, long len, int chunkShift) {
+    this(file, 0, len, chunkShift);
+  }
+
+  /**
+   * Maps len bytes of the file starting at the given offset, which then reads
+   * as position 0. Used for the entries stored uncompressed in an archive.
+   */
+
+  GeoMappedFileBuffer(RandomAccessFile file, long offset, long len, int chunkShift) {
+    this.len = len;
+    this.chunkShift = chunkShift;
+    this.chunkMask = (1L << chunkShift) - 1;
     try {
-      this.map = file.getChannel().map(MapMode.READ_ONLY, 0, file.length());
+      this.chunks = map(file.getChannel(), offset, len, chunkShift);
     } catch (IOException e) {
       throw new GeoDBException(e);
     }
-    this.len = len;
+    this.mapping = new Mapping(file, this.chunks);
+  }
+
+  /**
+   * a new cursor sharing the mapping of the given one.
+   */
+
+  private GeoMappedFileBuffer(GeoMappedFileBuffer mapping) {
+    this.len = mapping.len;
+    this.chunkShift = mapping.chunkShift;
+    this.chunkMask = mapping.chunkMask;
+    this.chunks = mapping.chunks;
+    this.mapping = mapping.mapping;
+  }
+
+  private static MappedByteBuffer[] map(FileChannel channel, long offset, long length, int chunkShift) throws IOException {
+
+    long chunkSize = 1L << chunkShift;
+    int count = (int) ((length + chunkSize - 1) >>> chunkShift);
+
+    MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+
+    for (int i = 0; i < count; ++i) {
+      long start = i * chunkSize;
+      long size = Math.min(chunkSize + CHUNK_OVERLAP, length - start);
+      chunks[i] = channel.map(MapMode.READ_ONLY, offset + start, size);
+      chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    return chunks;
+
+  }
+
+  private static MethodHandle unmapper() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(field.get(null));
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private MappedByteBuffer chunk(long pos) {
+    if (this.closed) {
+      throw new IllegalStateException("Buffer is closed");
+    }
+    return chunks[(int) (pos >>> chunkShift)];
+  }
+
+  private int offset(long pos) {
+    return (int) (pos & chunkMask);
   }
 
   @Override
   public char readChar() {
-    char ch = map.getChar(pos);
+    char ch = chunk(pos).getChar(offset(pos));
     pos += 2;
     return ch;
   }
 
   @Override
   public float readF32() {
-    float ch = map.getFloat(pos);
+    float ch = readF32At(pos);
     pos += 4;
     return ch;
   }
 
-  private short readShort() {
-    short ch = map.getShort(pos);
-    pos += 2;
-    return ch;
-  }
-
   public int readUnsignedByte() {
     return readByte() & 0xFF;
   }
 
   public byte readByte() {
-    byte ch = map.get(pos);
+    byte ch = chunk(pos).get(offset(pos));
     pos += 1;
     return ch;
   }
 
-  public int readInt() {
-    int ch = map.getInt(pos);
+  //
+
+  public short readInt16() {
+    short ch = readInt16At(pos);
+    pos += 2;
+    return ch;
+  }
+
+  @Override
+  public int readInt32() {
+    int ch = readInt32At(pos);
     pos += 4;
     return ch;
   }
 
-  public long readLong() {
-    long ch = map.getLong(pos);
+  @Override
+  public long readUInt32() {
+    return readInt32() & 0x00000000ffffffffL;
+  }
+
+  @Override
+  public double readD64() {
+    double ch = readD64At(pos);
     pos += 8;
     return ch;
   }
 
-  //
+  /**
+   * Any value with 8 mapped bytes after it in the chunk is decoded from a single
+   * word, see {@link VarInts}.
+   */
+
+  @Override
+  public void readVarInt64s(long[] dst, int count) {
+
+    long p = this.pos;
+
+    for (int i = 0; i < count; ++i) {
+
+      MappedByteBuffer chunk = chunk(p);
+      int offset = offset(p);
+
+      if (offset + 8 <= chunk.capacity()) {
+        long word = chunk.getLong(offset);
+        int n = VarInts.length(word);
+        if (n != 0) {
+          dst[i] = VarInts.signed(word, n);
+          p += n;
+          continue;
+        }
+      }
+
+      this.pos = p;
+      dst[i] = readVarInt64();
+      p = this.pos;
+
+    }
+
+    this.pos = p;
 
-  public short readInt16() {
-    return Short.reverseBytes(readShort());
   }
 
   @Override
-  public int readInt32() {
-    return Integer.reverseBytes(readInt());
+  public long remainingBytes() {
+    return len - pos;
   }
 
   @Override
-  public long readUInt32() {
-    return Integer.reverseBytes(readInt()) & 0x00000000ffffffffL;
+  public void seek(long pos) {
+    this.pos = pos;
   }
 
   @Override
-  public double readD64() {
-    return Double.longBitsToDouble(Long.reverseBytes(readLong()));
+  public void skipBytes(int i) {
+    pos += i;
   }
 
   @Override
-  public int readVarUInt32() {
-    int shift = 0;
-    int result = 0;
-    while (shift < 32) {
-      byte b = readByte();
-      result |= (int) (b & 0x7F) << shift;
-      if ((b & 0x80) == 0)
-        return result;
-      shift += 7;
-    }
-    throw new IllegalArgumentException("malformed");
+  public void readFully(byte[] defaultValue) {
+    readFullyAt(pos, defaultValue);
+    pos += defaultValue.length;
+  }
+
+  @Override
+  public long getFilePointer() {
+    return this.pos;
   }
 
+  /**
+   * Loads the given range of the file, clamped to its length, into memory on
+   * the calling thread.
+   */
+
   @Override
-  public long readVarUInt64() {
-    int shift = 0;
-    long result = 0;
-    while (shift < 64) {
-      byte b = readByte();
-      result |= (long) (b & 0x7F) << shift;
-      if ((b & 0x80) == 0)
-        return result;
-      shift += 7;
+  public void prefetch(long pos, long len) {
+
+    long end = (len >= this.len - pos) ? this.len : pos + len;
+
+    synchronized (this.mapping) {
+
+      if (this.mapping.unmapped) {
+        return;
+      }
+
+      while (pos < end) {
+        MappedByteBuffer chunk = this.chunks[(int) (pos >>> chunkShift)];
+        int offset = offset(pos);
+        int count = (int) Math.min(end - pos, (chunkMask + 1) - offset);
+        chunk.slice(offset, count).load();
+        pos += count;
+      }
+
     }
-    throw new IllegalArgumentException("malformed");
+
   }
 
+  /**
+   * records a row being read, and loads the pages ahead in the background if it
+   * looks like we're in a sequential scan.
+   */
+
   @Override
-  public int readVarInt32() {
+  public void accessed(long pos, long len) {
 
-    int b = readUnsignedByte();
+    Mapping ra = this.mapping;
 
-    int ret = (b & 0x3F);
-    int sign = 1;
+    long end = pos + len;
 
-    if ((b & 0x40) != 0) {
-      sign = -1;
+    if (ra.lastEnd >= 0 && pos >= ra.lastEnd && pos - ra.lastEnd <= READAHEAD_GAP) {
+      ra.sequential++;
+    } else {
+      ra.sequential = 0;
     }
 
-    if ((b & 0x80) == 0) {
-      return sign * ret;
+    ra.lastEnd = end;
+
+    if (ra.sequential < READAHEAD_THRESHOLD || end + (READAHEAD_WINDOW / 2) < ra.loadedTo) {
+      return;
     }
 
-    int shift = 6;
+    long from = Math.max(end, ra.loadedTo);
+    long to = Math.min(this.len, end + READAHEAD_WINDOW);
 
-    while (true) {
-      b = readUnsignedByte();
-      ret |= (int) ((b & 0x7F) << shift);
-      if ((b & 0x80) == 0)
-        break;
-      shift += 7;
+    if (from >= to) {
+      return;
     }
 
-    return sign * ret;
+    ra.loadedTo = to;
+
+    READAHEAD_EXECUTOR.execute(() -> prefetch(from, to - from));
 
   }
 
+  /**
+   * A new cursor, which holds the mapping open until it's closed too.
+   */
+
   @Override
-  public long readVarInt64() {
+  public GeoMappedFileBuffer duplicate() {
+    if (this.closed) {
+      throw new IllegalStateException("Buffer is closed");
+    }
+    // this one is still open, so the count can't have reached zero.
+    this.mapping.users.incrementAndGet();
+    return new GeoMappedFileBuffer(this);
+  }
 
-    long b = readUnsignedByte();
+  /**
+   * Stops this cursor reading, and closes the file and unmaps it if this was
+   * the last one open over it.
+   */
 
-    long ret = (b & 0x3F);
-    int sign = 1;
+  @Override
+  public void close() {
 
-    if ((b & 0x40) != 0) {
-      sign = -1;
+    if (this.closed) {
+      return;
     }
 
-    if ((b & 0x80) == 0) {
-      return sign * ret;
+    this.closed = true;
+
+    if (this.mapping.users.decrementAndGet() > 0) {
+      return;
     }
 
-    int shift = 6;
+    synchronized (this.mapping) {
+
+      this.mapping.unmapped = true;
+
+      if (UNMAPPER != null) {
+        for (MappedByteBuffer chunk : this.chunks) {
+          try {
+            UNMAPPER.invokeExact((ByteBuffer) chunk);
+          } catch (Throwable e) {
+            // leave it to the GC.
+          }
+        }
+      }
 
-    while (true) {
-      b = readUnsignedByte();
-      ret |= (long) ((b & 0x7F) << shift);
-      if ((b & 0x80) == 0)
-        break;
-      shift += 7;
     }
 
-    return sign * ret;
+    try {
+      this.mapping.file.close();
+    } catch (IOException e) {
+      // nothing to do.
+    }
 
   }
 
   @Override
-  public long remainingBytes() {
-    return len - pos;
+  public int readUInt8() {
+    return readUnsignedByte();
   }
 
+  // --
+
   @Override
-  public void seek(long pos) {
-    this.pos = (int) pos;
+  public int readUInt8At(long pos) {
+    return chunk(pos).get(offset(pos)) & 0xFF;
   }
 
   @Override
-  public void skipBytes(int i) {
-    pos += i;
+  public short readInt16At(long pos) {
+    return chunk(pos).getShort(offset(pos));
   }
 
   @Override
-  public void readFully(byte[] defaultValue) {
-    map.position(this.pos);
-    map.get(defaultValue, 0, defaultValue.length);
-    map.position(map.position() - defaultValue.length);
-    pos += defaultValue.length;
+  public int readInt32At(long pos) {
+    return chunk(pos).getInt(offset(pos));
   }
 
   @Override
-  public long getFilePointer() {
-    return this.pos;
+  public long readUInt32At(long pos) {
+    return readInt32At(pos) & 0x00000000ffffffffL;
   }
 
-  public void close() {
-    try {
-      this.file.close();
-    } catch (IOException e) {
-      // nothing to do.
+  @Override
+  public float readF32At(long pos) {
+    return chunk(pos).getFloat(offset(pos));
+  }
+
+  @Override
+  public double readD64At(long pos) {
+    return chunk(pos).getDouble(offset(pos));
+  }
+
+  @Override
+  public void readFullyAt(long pos, byte[] data) {
+
+    int done = 0;
+
+    while (done < data.length) {
+
+      MappedByteBuffer chunk = chunk(pos);
+      int offset = offset(pos);
+
+      // only copy up to the end of this chunk, not into the overlap.
+      int count = (int) Math.min(data.length - done, (chunkMask + 1) - offset);
+
+      chunk.get(offset, data, done, count);
+
+      done += count;
+      pos += count;
+
     }
+
   }
 
+  /**
+   * The slice is copied to the heap, so it can't outlive the mapping.
+   */
+
   @Override
-  public int readUInt8() {
-    return readUnsignedByte();
+  public GeoByteBuffer sliceAt(long pos, int len) {
+
+    if (pos < 0 || len < 0 || len > this.len - pos) {
+      throw new IndexOutOfBoundsException(String.format("%d bytes at %d is outside of the %d byte buffer", len, pos, this.len));
+    }
+
+    byte[] data = new byte[len];
+    readFullyAt(pos, data);
+    return new GeoByteBuffer(data);
+
   }
 
 }
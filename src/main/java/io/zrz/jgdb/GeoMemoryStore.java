@@ -0,0 +1,50 @@
+package io.zrz.jgdb;
+
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link GeoStore} holding each file in a byte array, e.g for tests or
+ * databases fetched into memory from elsewhere.
+ *
+ */
+
+public class GeoMemoryStore implements GeoStore {
+
+  private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+  /**
+   * Adds (or replaces) a file. The array is used as is, not copied.
+   */
+
+  public GeoMemoryStore put(final String name, final byte[] data) {
+    this.files.put(name, data);
+    return this;
+  }
+
+  @Override
+  public boolean exists(final String name) {
+    return this.files.containsKey(name);
+  }
+
+  @Override
+  public List<String> list() {
+    final List<String> names = new ArrayList<>(this.files.keySet());
+    Collections.sort(names);
+    return names;
+  }
+
+  @Override
+  public GeoBuffer open(final String name) throws NoSuchFileException {
+    final byte[] data = this.files.get(name);
+    if (data == null) {
+      throw new NoSuchFileException(name);
+    }
+    return new GeoByteBuffer(data);
+  }
+
+}
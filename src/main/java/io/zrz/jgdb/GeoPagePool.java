@@ -0,0 +1,71 @@
+package io.zrz.jgdb;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of page aligned, little endian direct buffers used by
+ * {@link GeoChannelFileBuffer}.
+ *
+ * Direct buffers are expensive to allocate and only released by the GC, so
+ * pages are returned here when a file is closed and reused by the next one.
+ *
+ */
+
+final class GeoPagePool {
+
+  /**
+   * The alignment of each page, which matches the page size of the OS on
+   * nearly everything we'll run on.
+   */
+
+  static final int ALIGNMENT = 4096;
+
+  /**
+   * The size of each read. Pages have an extra {@link #ALIGNMENT} bytes of
+   * capacity on top of this, so a primitive starting anywhere in a page never
+   * straddles the end of it.
+   */
+
+  static final int PAGE_SIZE = 64 * 1024;
+
+  /**
+   * The maximum number of free pages kept around.
+   */
+
+  private static final int MAX_FREE = 256;
+
+  static final GeoPagePool INSTANCE = new GeoPagePool();
+
+  private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  ByteBuffer acquire() {
+    ByteBuffer buf = free.poll();
+    if (buf != null) {
+      size.decrementAndGet();
+      buf.clear();
+      return buf;
+    }
+    return ByteBuffer.allocateDirect(PAGE_SIZE + ALIGNMENT * 2).alignedSlice(ALIGNMENT).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * the number of free pages.
+   */
+
+  int size() {
+    return size.get();
+  }
+
+  void release(ByteBuffer buf) {
+    if (size.incrementAndGet() > MAX_FREE) {
+      size.decrementAndGet();
+      return;
+    }
+    free.offer(buf);
+  }
+
+}
@@ -0,0 +1,89 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@link GeoStore} over a GDB folder.
+ *
+ * Local files are read with the given {@link GeoFileAccess}. In a zip opened
+ * with the zip filesystem, files stored uncompressed are mapped straight out
+ * of the archive and deflated ones are inflated into memory as they're opened.
+ * Files on any other filesystem are read into memory whole.
+ *
+ */
+
+public class GeoPathStore implements GeoStore {
+
+  private final Path dir;
+  private final GeoFileAccess access;
+
+  /**
+   * The archive the folder is in, when opened through the zip filesystem.
+   */
+
+  private final GeoZipArchive archive;
+
+  public GeoPathStore(final Path dir) {
+    this(dir, GeoFileAccess.MMAP);
+  }
+
+  public GeoPathStore(final Path dir, final GeoFileAccess access) {
+    this.dir = dir;
+    this.access = access;
+    try {
+      this.archive = GeoZipArchive.of(dir);
+    } catch (final IOException e) {
+      throw new GeoDBException(e);
+    }
+  }
+
+  public Path getDirectory() {
+    return this.dir;
+  }
+
+  @Override
+  public boolean exists(final String name) {
+    return Files.exists(this.dir.resolve(name));
+  }
+
+  @Override
+  public long lastModified(final String name) {
+    try {
+      return Files.getLastModifiedTime(this.dir.resolve(name)).toMillis();
+    } catch (final IOException e) {
+      return -1;
+    }
+  }
+
+  @Override
+  public List<String> list() throws IOException {
+    try (Stream<Path> files = Files.list(this.dir)) {
+      return files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+    }
+  }
+
+  @Override
+  public GeoBuffer open(final String name) throws IOException {
+    final Path file = this.dir.resolve(name);
+    if (this.archive != null) {
+      return this.archive.open(file);
+    }
+    if (file.getFileSystem() != FileSystems.getDefault()) {
+      // nothing to map, so read the whole file.
+      return new GeoByteBuffer(Files.readAllBytes(file));
+    }
+    return this.access.open(file);
+  }
+
+  @Override
+  public String toString() {
+    return this.dir.toString();
+  }
+
+}
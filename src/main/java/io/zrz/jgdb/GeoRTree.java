@@ -0,0 +1,538 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import io.zrz.jgdb.shape.Envelope;
+import io.zrz.jgdb.shape.GeometryValue;
+
+/**
+ * A static R-tree over the bounding boxes of the features of a layer, for
+ * layers without a usable .spx or for nearest neighbour queries.
+ *
+ * The tree is built with one pass over the layer and packed with STR
+ * (sort-tile-recursive): the boxes are sorted into vertical slices by their
+ * centre x, each slice by centre y, then grouped {@link #NODE_SIZE} at a time
+ * into the nodes of each level up to the root. Everything is held in two
+ * primitive buffers: four doubles of bounds per node, and an int per node
+ * which for leaves is the OBJECTID and otherwise the position of the first
+ * child.
+ *
+ * Trees can be saved to a sidecar file, which {@link #open(GeoTable, Path)}
+ * maps straight back in as long as the size and modification time of the
+ * table it was built from haven't changed.
+ *
+ */
+
+public class GeoRTree {
+
+  /**
+   * the number of children of each node.
+   */
+
+  public static final int NODE_SIZE = 16;
+
+  private static final int MAGIC = 0x5452474A;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 40;
+
+  private final int count;
+  private final int[] levelEnds;
+  private final DoubleBuffer boxes;
+  private final IntBuffer indices;
+
+  private GeoRTree(int count, int[] levelEnds, DoubleBuffer boxes, IntBuffer indices) {
+    this.count = count;
+    this.levelEnds = levelEnds;
+    this.boxes = boxes;
+    this.indices = indices;
+  }
+
+  /**
+   * The number of features in the tree.
+   */
+
+  public int size() {
+    return this.count;
+  }
+
+  // -- building
+
+  /**
+   * Builds a tree over the shapes of all the features in the layer. Features
+   * without a shape are left out.
+   */
+
+  public static GeoRTree build(GeoLayer layer) {
+
+    int shape = layer.getFields().indexOf(layer.getShapeField());
+
+    if (shape < 0) {
+      throw new IllegalArgumentException("Layer has no shape field");
+    }
+
+    int n = 0;
+    double[] items = new double[64];
+    int[] ids = new int[16];
+
+    for (GeoFeature feature : layer) {
+
+      GeometryValue geom = feature.getValue(shape).geometryValue();
+      Envelope bounds = (geom == null) ? null : Envelope.of(geom);
+
+      if (bounds == null) {
+        continue;
+      }
+
+      if (n == ids.length) {
+        ids = Arrays.copyOf(ids, n * 2);
+        items = Arrays.copyOf(items, n * 8);
+      }
+
+      items[n * 4] = bounds.getMinX();
+      items[n * 4 + 1] = bounds.getMinY();
+      items[n * 4 + 2] = bounds.getMaxX();
+      items[n * 4 + 3] = bounds.getMaxY();
+      ids[n] = (int) feature.getFeatureId();
+      ++n;
+
+    }
+
+    return pack(items, ids, n);
+
+  }
+
+  /**
+   * packs n boxes (four doubles each) with the given OBJECTIDs into a tree.
+   */
+
+  static GeoRTree pack(double[] items, int[] ids, int n) {
+
+    // the number of nodes in each level, from the leaves up.
+    int levels = 1;
+    int total = n;
+
+    for (int size = n; size > 1; ++levels) {
+      size = (size + NODE_SIZE - 1) / NODE_SIZE;
+      total += size;
+    }
+
+    int[] levelEnds = new int[levels];
+    double[] boxes = new double[total * 4];
+    int[] indices = new int[total];
+
+    // sort the leaves into slices by x, then each slice by y.
+
+    int[] order = new int[n];
+    double[] keys = new double[n];
+
+    for (int i = 0; i < n; ++i) {
+      order[i] = i;
+      keys[i] = items[i * 4] + items[i * 4 + 2];
+    }
+
+    sort(order, keys, 0, n);
+
+    int leaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+    int slice = NODE_SIZE * (int) Math.ceil(Math.sqrt(leaves));
+
+    for (int i = 0; i < n; ++i) {
+      keys[i] = items[order[i] * 4 + 1] + items[order[i] * 4 + 3];
+    }
+
+    for (int start = 0; start < n; start += slice) {
+      sort(order, keys, start, Math.min(n, start + slice));
+    }
+
+    for (int i = 0; i < n; ++i) {
+      System.arraycopy(items, order[i] * 4, boxes, i * 4, 4);
+      indices[i] = ids[order[i]];
+    }
+
+    levelEnds[0] = n;
+
+    // then group each level into the one above.
+
+    int start = 0;
+    int end = n;
+
+    for (int level = 1; level < levels; ++level) {
+
+      int pos = end;
+
+      for (int child = start; child < end; child += NODE_SIZE) {
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+        for (int c = child; c < Math.min(end, child + NODE_SIZE); ++c) {
+          minX = Math.min(minX, boxes[c * 4]);
+          minY = Math.min(minY, boxes[c * 4 + 1]);
+          maxX = Math.max(maxX, boxes[c * 4 + 2]);
+          maxY = Math.max(maxY, boxes[c * 4 + 3]);
+        }
+
+        boxes[pos * 4] = minX;
+        boxes[pos * 4 + 1] = minY;
+        boxes[pos * 4 + 2] = maxX;
+        boxes[pos * 4 + 3] = maxY;
+        indices[pos] = child;
+        ++pos;
+
+      }
+
+      levelEnds[level] = pos;
+      start = end;
+      end = pos;
+
+    }
+
+    return new GeoRTree(n, levelEnds, DoubleBuffer.wrap(boxes), IntBuffer.wrap(indices));
+
+  }
+
+  /**
+   * sorts the range of order by the matching keys, keeping the two in step.
+   */
+
+  private static void sort(int[] order, double[] keys, int from, int to) {
+
+    while (to - from > 16) {
+
+      double pivot = keys[(from + to) >>> 1];
+      int i = from;
+      int j = to - 1;
+
+      while (i <= j) {
+        while (keys[i] < pivot) {
+          ++i;
+        }
+        while (keys[j] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          swap(order, keys, i++, j--);
+        }
+      }
+
+      // recurse into the smaller side, loop on the larger.
+      if (j - from < to - i) {
+        sort(order, keys, from, j + 1);
+        from = i;
+      } else {
+        sort(order, keys, i, to);
+        to = j + 1;
+      }
+
+    }
+
+    for (int i = from + 1; i < to; ++i) {
+      for (int j = i; j > from && keys[j - 1] > keys[j]; --j) {
+        swap(order, keys, j, j - 1);
+      }
+    }
+
+  }
+
+  private static void swap(int[] order, double[] keys, int a, int b) {
+    int o = order[a];
+    order[a] = order[b];
+    order[b] = o;
+    double k = keys[a];
+    keys[a] = keys[b];
+    keys[b] = k;
+  }
+
+  // -- queries
+
+  private boolean intersects(int node, double minX, double minY, double maxX, double maxY) {
+    return boxes.get(node * 4) <= maxX && boxes.get(node * 4 + 1) <= maxY && boxes.get(node * 4 + 2) >= minX && boxes.get(node * 4 + 3) >= minY;
+  }
+
+  /**
+   * the children of the given node, which is in the given level (above 0).
+   */
+
+  private int childEnd(int node, int level) {
+    return Math.min(indices.get(node) + NODE_SIZE, levelEnds[level - 1]);
+  }
+
+  /**
+   * The OBJECTIDs of the features whose bounding boxes intersect the envelope.
+   */
+
+  public int[] search(Envelope envelope) {
+
+    GeoBTree.IntList result = new GeoBTree.IntList();
+
+    if (this.count == 0) {
+      return result.toArray();
+    }
+
+    double minX = envelope.getMinX(), minY = envelope.getMinY();
+    double maxX = envelope.getMaxX(), maxY = envelope.getMaxY();
+
+    // pairs of node and level.
+    int[] stack = new int[16];
+    int top = 0;
+
+    stack[top++] = levelEnds[levelEnds.length - 1] - 1;
+    stack[top++] = levelEnds.length - 1;
+
+    while (top > 0) {
+
+      int level = stack[--top];
+      int node = stack[--top];
+
+      if (!intersects(node, minX, minY, maxX, maxY)) {
+        continue;
+      }
+
+      if (level == 0) {
+        result.add(indices.get(node));
+        continue;
+      }
+
+      for (int child = indices.get(node), end = childEnd(node, level); child < end; ++child) {
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = child;
+        stack[top++] = level - 1;
+      }
+
+    }
+
+    return result.toArray();
+
+  }
+
+  private static final class Candidate implements Comparable<Candidate> {
+
+    private final double distance;
+    private final int node;
+    private final int level;
+
+    private Candidate(double distance, int node, int level) {
+      this.distance = distance;
+      this.node = node;
+      this.level = level;
+    }
+
+    @Override
+    public int compareTo(Candidate o) {
+      return Double.compare(this.distance, o.distance);
+    }
+
+  }
+
+  /**
+   * the squared distance from the point to the box of a node, 0 if inside it.
+   */
+
+  private double distance(int node, double x, double y) {
+    double dx = Math.max(0, Math.max(boxes.get(node * 4) - x, x - boxes.get(node * 4 + 2)));
+    double dy = Math.max(0, Math.max(boxes.get(node * 4 + 1) - y, y - boxes.get(node * 4 + 3)));
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * The OBJECTIDs of (up to) the k features whose bounding boxes are nearest
+   * the point, nearest first.
+   */
+
+  public int[] nearest(double x, double y, int k) {
+
+    GeoBTree.IntList result = new GeoBTree.IntList();
+
+    if (this.count == 0 || k <= 0) {
+      return result.toArray();
+    }
+
+    // best first: anything popped as a leaf is nearer than everything left.
+    PriorityQueue<Candidate> queue = new PriorityQueue<>();
+
+    int root = levelEnds[levelEnds.length - 1] - 1;
+    queue.add(new Candidate(distance(root, x, y), root, levelEnds.length - 1));
+
+    while (!queue.isEmpty() && result.size() < k) {
+
+      Candidate next = queue.poll();
+
+      if (next.level == 0) {
+        result.add(indices.get(next.node));
+        continue;
+      }
+
+      for (int child = indices.get(next.node), end = childEnd(next.node, next.level); child < end; ++child) {
+        queue.add(new Candidate(distance(child, x, y), child, next.level - 1));
+      }
+
+    }
+
+    return result.toArray();
+
+  }
+
+  // -- sidecar files
+
+  /**
+   * Maps the tree saved in the sidecar if it was built from the table as it is
+   * now, otherwise builds it and saves it there for next time.
+   *
+   * If the store of the table can't say when the table was modified, the tree
+   * is built in memory and not saved.
+   */
+
+  public static GeoRTree open(GeoTable table, Path sidecar) throws IOException {
+
+    long size = table.getFileSize();
+    long modified = table.getLastModified();
+
+    if (modified < 0) {
+      return build(table);
+    }
+
+    if (Files.exists(sidecar)) {
+      GeoRTree tree = load(sidecar, size, modified);
+      if (tree != null) {
+        return tree;
+      }
+    }
+
+    GeoRTree tree = build(table);
+    tree.save(sidecar, size, modified);
+    return tree;
+
+  }
+
+  /**
+   * maps a sidecar, returning null if it's not for a table of the given size
+   * and modification time.
+   */
+
+  static GeoRTree load(Path sidecar, long tableSize, long tableModified) throws IOException {
+
+    try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+
+      long length = channel.size();
+
+      if (length < HEADER_SIZE) {
+        return null;
+      }
+
+      // the mapping stays valid once the channel is closed.
+      MappedByteBuffer map = channel.map(MapMode.READ_ONLY, 0, length);
+      map.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != NODE_SIZE) {
+        return null;
+      }
+
+      int count = map.getInt(12);
+      int total = map.getInt(16);
+      int levels = map.getInt(20);
+
+      if (map.getLong(24) != tableSize || map.getLong(32) != tableModified) {
+        return null;
+      }
+
+      int boxesAt = boxesOffset(levels);
+
+      if (count < 0 || levels < 1 || total < count || length != boxesAt + (long) total * 36) {
+        return null;
+      }
+
+      int[] levelEnds = new int[levels];
+
+      for (int i = 0; i < levels; ++i) {
+        levelEnds[i] = map.getInt(HEADER_SIZE + i * 4);
+      }
+
+      DoubleBuffer boxes = map.slice(boxesAt, total * 32).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+      IntBuffer indices = map.slice(boxesAt + total * 32, total * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+      return new GeoRTree(count, levelEnds, boxes, indices);
+
+    }
+
+  }
+
+  private static int boxesOffset(int levels) {
+    // the boxes start 8 byte aligned after the level ends.
+    return (HEADER_SIZE + levels * 4 + 7) & ~7;
+  }
+
+  /**
+   * Writes the tree to a sidecar, tagged with the size and modification time of
+   * the table it was built from. The file is written alongside and moved into
+   * place, so a reader never sees half of it.
+   */
+
+  void save(Path sidecar, long tableSize, long tableModified) throws IOException {
+
+    int total = this.indices.limit();
+    int levels = this.levelEnds.length;
+
+    Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+      ByteBuffer buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+      buf.putInt(MAGIC).putInt(VERSION).putInt(NODE_SIZE).putInt(this.count).putInt(total).putInt(levels);
+      buf.putLong(tableSize).putLong(tableModified);
+
+      for (int end : this.levelEnds) {
+        buf.putInt(end);
+      }
+
+      while (buf.position() < boxesOffset(levels)) {
+        buf.put((byte) 0);
+      }
+
+      for (int i = 0; i < total * 4; ++i) {
+        if (buf.remaining() < 8) {
+          flush(channel, buf);
+        }
+        buf.putDouble(this.boxes.get(i));
+      }
+
+      for (int i = 0; i < total; ++i) {
+        if (buf.remaining() < 4) {
+          flush(channel, buf);
+        }
+        buf.putInt(this.indices.get(i));
+      }
+
+      flush(channel, buf);
+
+    }
+
+    Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    }
+    buf.clear();
+  }
+
+}
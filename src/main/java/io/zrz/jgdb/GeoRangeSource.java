@@ -0,0 +1,52 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reads ranges of the files of a geodatabase held somewhere remote, such as
+ * an object store, for a {@link GeoCachingStore}.
+ *
+ * Implementations must be safe to call from multiple threads at once.
+ *
+ */
+
+public interface GeoRangeSource extends AutoCloseable {
+
+  /**
+   * The names of all the files.
+   */
+
+  List<String> list() throws IOException;
+
+  /**
+   * The length of the named file.
+   *
+   * @throws java.nio.file.NoSuchFileException
+   *           if it doesn't exist.
+   */
+
+  long length(String name) throws IOException;
+
+  /**
+   * Reads from the given position in the named file into the buffer, until it's
+   * full or the end of the file is reached.
+   */
+
+  void read(String name, long pos, ByteBuffer dst) throws IOException;
+
+  @Override
+  default void close() {
+  }
+
+  /**
+   * A source reading a local folder, standing in for a remote one.
+   */
+
+  static GeoRangeSource local(final Path dir) {
+    return new GeoLocalRangeSource(dir);
+  }
+
+}
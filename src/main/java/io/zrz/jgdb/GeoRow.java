@@ -0,0 +1,331 @@
+package io.zrz.jgdb;
+
+import java.util.List;
+
+/**
+ * A row of a table, read in place from the table's files: nothing is decoded
+ * until a field is asked for, and then only that field. The positions of the
+ * fields in the row are worked out as far as the furthest one asked for, and
+ * kept for the next.
+ *
+ * As the row is read from the files of its table, it must not outlive the
+ * table: once the table is closed, reading a field of the row throws an
+ * {@link IllegalStateException}.
+ *
+ * @see GeoFeature
+ * @see RowCursor
+ */
+
+public abstract class GeoRow {
+
+  final FileGDBTable table;
+  final FileGDBTable.Projection projection;
+  final GeoBuffer file;
+
+  long featureId;
+
+  /**
+   * the position of the row in the table, after its length, and the length.
+   */
+
+  long row;
+  int length;
+
+  /**
+   * the positions in the row of the fields of the table (not just the
+   * projection) up to and including the known one.
+   */
+
+  private int[] positions;
+  private int known = -1;
+
+  GeoRow(FileGDBTable table, FileGDBTable.Projection projection) {
+    this.table = table;
+    this.projection = projection;
+    this.file = table.getBuffer();
+  }
+
+  /**
+   * moves to another row.
+   */
+
+  void moveTo(long featureId, long row, int length) {
+    this.featureId = featureId;
+    this.row = row;
+    this.length = length;
+    this.known = -1;
+  }
+
+  public long getFeatureId() {
+    return this.featureId;
+  }
+
+  public List<GeoField> getFields() {
+    return this.projection.getFields();
+  }
+
+  public int getFieldId(String name) {
+    return this.projection.getField(name);
+  }
+
+  /**
+   * the position of the field in this row's fields.
+   */
+
+  int getFieldId(FieldRef field) {
+    return (field.projection == this.projection) ? field.fieldId : getFieldId(field.getName());
+  }
+
+  public GeoFieldValue getValue(int fieldId) {
+    return new GeoFieldValue(getFields().get(fieldId), value(fieldId));
+  }
+
+  public GeoFieldValue getValue(String name) {
+    return getValue(getFieldId(name));
+  }
+
+  public GeoFieldValue getValue(FieldRef field) {
+    return getValue(getFieldId(field));
+  }
+
+  /**
+   * True if the field is null.
+   */
+
+  public boolean isNull(int fieldId) {
+    return this.table.isNull(this.row, this.projection.columns[fieldId]);
+  }
+
+  public boolean isNull(FieldRef field) {
+    return isNull(getFieldId(field));
+  }
+
+  /*
+   * The accessors below read the value straight from the row without boxing
+   * it, so a null can't be told apart from the value it reads as: use
+   * isNull() where that matters.
+   */
+
+  /**
+   * The value of a short or integer field. Null values read as 0.
+   *
+   * @throws IllegalArgumentException
+   *           if the field isn't a short or integer.
+   */
+
+  public int getInt(int fieldId) {
+
+    int column = this.projection.columns[fieldId];
+    RowPlan.Kind kind = this.table.kind(column);
+
+    if (kind != RowPlan.Kind.SHORT && kind != RowPlan.Kind.INT) {
+      throw wrongType(fieldId, "an integer");
+    }
+
+    if (this.table.isNull(this.row, column)) {
+      return 0;
+    }
+
+    long pos = position(column);
+
+    return (kind == RowPlan.Kind.INT) ? this.file.readInt32At(pos) : this.file.readInt16At(pos);
+
+  }
+
+  public int getInt(FieldRef field) {
+    return getInt(getFieldId(field));
+  }
+
+  /**
+   * The value of a short or integer field, as a long. Null values read as 0.
+   *
+   * @throws IllegalArgumentException
+   *           if the field isn't a short or integer.
+   */
+
+  public long getLong(int fieldId) {
+    return getInt(fieldId);
+  }
+
+  public long getLong(FieldRef field) {
+    return getLong(getFieldId(field));
+  }
+
+  /**
+   * The value of a numeric field. Null values read as NaN.
+   *
+   * @throws IllegalArgumentException
+   *           if the field isn't a short, integer, float or double.
+   */
+
+  public double getDouble(int fieldId) {
+
+    int column = this.projection.columns[fieldId];
+    RowPlan.Kind kind = this.table.kind(column);
+
+    switch (kind) {
+      case SHORT:
+      case INT:
+      case FLOAT:
+      case DOUBLE:
+        break;
+      default:
+        throw wrongType(fieldId, "a numeric");
+    }
+
+    if (this.table.isNull(this.row, column)) {
+      return Double.NaN;
+    }
+
+    long pos = position(column);
+
+    switch (kind) {
+      case SHORT:
+        return this.file.readInt16At(pos);
+      case INT:
+        return this.file.readInt32At(pos);
+      case FLOAT:
+        return this.file.readF32At(pos);
+      default:
+        return this.file.readD64At(pos);
+    }
+
+  }
+
+  public double getDouble(FieldRef field) {
+    return getDouble(getFieldId(field));
+  }
+
+  /**
+   * The value of a date field, as milliseconds since 1970, rounded to the
+   * nearest millisecond rather than to the whole second as
+   * {@link GeoFieldValue#instantValue()} is. Null values read as 0.
+   *
+   * @throws IllegalArgumentException
+   *           if the field isn't a date.
+   */
+
+  public long getEpochMillis(int fieldId) {
+
+    int column = this.projection.columns[fieldId];
+
+    if (this.table.kind(column) != RowPlan.Kind.DATE) {
+      throw wrongType(fieldId, "a date");
+    }
+
+    if (this.table.isNull(this.row, column)) {
+      return 0;
+    }
+
+    return DateFieldType.toEpochMilli(this.file.readD64At(position(column)));
+
+  }
+
+  public long getEpochMillis(FieldRef field) {
+    return getEpochMillis(getFieldId(field));
+  }
+
+  /**
+   * The value of a string field, as a view of its UTF-8 bytes which is only
+   * decoded if it's asked to be. Null values, and empty strings as with
+   * {@link #getValue(int)}, read as null.
+   *
+   * @throws IllegalArgumentException
+   *           if the field isn't a string.
+   */
+
+  public Utf8Slice getUtf8(int fieldId) {
+
+    int column = this.projection.columns[fieldId];
+
+    if (this.table.kind(column) != RowPlan.Kind.STRING) {
+      throw wrongType(fieldId, "a string");
+    }
+
+    if (this.table.isNull(this.row, column)) {
+      return null;
+    }
+
+    Utf8Slice value = Utf8Slice.at(this.file, position(column));
+
+    return (value.byteLength() == 0) ? null : value;
+
+  }
+
+  public Utf8Slice getUtf8(FieldRef field) {
+    return getUtf8(getFieldId(field));
+  }
+
+  private IllegalArgumentException wrongType(int fieldId, String what) {
+    return new IllegalArgumentException(String.format("%s is not %s field", getFields().get(fieldId).getName(), what));
+  }
+
+  /**
+   * the value of the given field of the projection.
+   */
+
+  Object value(int fieldId) {
+    return decode(this.projection.columns[fieldId]);
+  }
+
+  Object decode(int column) {
+    try {
+      if (this.table.isNull(this.row, column)) {
+        return this.table.getFields().get(column).getType().getDefaultValue();
+      }
+      return this.table.read(position(column), this.row + this.length, column);
+    } catch (IllegalStateException ex) {
+      // the table is closed, rather than anything wrong with the row.
+      throw ex;
+    } catch (Exception ex) {
+      throw new GeoDBException(String.format("While processing FID %d at offset %d", this.featureId, this.row - 4), ex);
+    }
+  }
+
+  /**
+   * the position of the given field of the table in the row, working out the
+   * positions of those before it that haven't been yet.
+   */
+
+  long position(int column) {
+
+    int fixed = this.table.fixedPosition(column);
+
+    if (fixed >= 0) {
+      return this.row + fixed;
+    }
+
+    if (column <= this.known) {
+      return this.row + this.positions[column];
+    }
+
+    if (this.positions == null) {
+      this.positions = new int[this.table.getFields().size()];
+    }
+
+    // walk forward from the last one known.
+    int i = this.known;
+    long pos;
+
+    if (i < 0) {
+      i = 0;
+      pos = this.table.firstField(this.row);
+      this.positions[0] = (int) (pos - this.row);
+    } else {
+      pos = this.row + this.positions[i];
+    }
+
+    for (; i < column; ++i) {
+      if (!this.table.isNull(this.row, i)) {
+        pos = this.table.skip(pos, i);
+      }
+      this.positions[i + 1] = (int) (pos - this.row);
+    }
+
+    this.known = column;
+
+    return pos;
+
+  }
+
+}
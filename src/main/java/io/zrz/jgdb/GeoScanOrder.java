@@ -0,0 +1,24 @@
+package io.zrz.jgdb;
+
+/**
+ * The order a layer is scanned in.
+ *
+ */
+
+public enum GeoScanOrder {
+
+  /**
+   * By OBJECTID, the order of the .gdbtablx. The default.
+   */
+
+  OBJECTID,
+
+  /**
+   * The order the rows are stored in the .gdbtable, so a full scan reads the
+   * file from start to end. Tables which have been edited store their rows out
+   * of OBJECTID order.
+   */
+
+  PHYSICAL;
+
+}
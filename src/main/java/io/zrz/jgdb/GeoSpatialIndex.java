@@ -0,0 +1,125 @@
+package io.zrz.jgdb;
+
+import java.util.Arrays;
+
+import io.zrz.jgdb.shape.Envelope;
+
+/**
+ * A spatial index (.spx) of a table, giving the features which may intersect
+ * a bounding box.
+ *
+ * It's a {@link GeoBTree} of 64 bit keys, each a cell of one of the levels of
+ * the grid described by the geometry field: the level in the top 2 bits, then
+ * 31 bits each of the column and row, offset so negative coordinates stay
+ * positive. The offset is 2^29 cells of the first level, so it's scaled down
+ * for the coarser levels, as GDAL does. Each feature is indexed in the cells of the level suited to
+ * its size, so a lookup checks the cells of the box at every level. Cells are
+ * coarse, so the features returned still need checking against the box.
+ *
+ */
+
+final class GeoSpatialIndex {
+
+  /**
+   * the offset of the cells of the first level.
+   */
+
+  private static final long CELL_OFFSET = 1L << 29;
+
+  private static final long MAX_CELL = (1L << 31) - 1;
+
+  /**
+   * above this many columns, a level is looked up as one range of keys rather
+   * than a range per column, returning more candidates for far fewer descents.
+   */
+
+  private static final int MAX_COLUMNS = 1024;
+
+  private final GeoBTree tree;
+  private final double[] gridSizes;
+
+  GeoSpatialIndex(GeoBuffer file, double[] gridSizes) {
+
+    this.tree = new GeoBTree("spx", file);
+    this.gridSizes = gridSizes;
+
+    if (tree.getValueSize() != 8) {
+      tree.close();
+      throw new GeoDBException(String.format("Unsupported spatial index with %d byte keys", tree.getValueSize()));
+    }
+
+  }
+
+  static long key(int level, long x, long y) {
+    return ((long) level << 62) | (x << 31) | y;
+  }
+
+  /**
+   * the column or row of the cell of the given level the value is in.
+   */
+
+  long cell(int level, double value) {
+    double size = this.gridSizes[level];
+    double cell = Math.floor(value / size + CELL_OFFSET * this.gridSizes[0] / size);
+    return (long) Math.max(0, Math.min(MAX_CELL, cell));
+  }
+
+  /**
+   * The OBJECTIDs of the features in cells which intersect the envelope, in
+   * ascending order.
+   */
+
+  int[] candidates(Envelope envelope) {
+
+    GeoBTree.IntList ids = new GeoBTree.IntList();
+
+    for (int level = 0; level < this.gridSizes.length; ++level) {
+
+      double size = this.gridSizes[level];
+
+      if (!(size > 0)) {
+        continue;
+      }
+
+      long x0 = cell(level, envelope.getMinX());
+      long x1 = cell(level, envelope.getMaxX());
+      long y0 = cell(level, envelope.getMinY());
+      long y1 = cell(level, envelope.getMaxY());
+
+      if (x1 - x0 >= MAX_COLUMNS) {
+        this.tree.find(bound(key(level, x0, y0)), bound(key(level, x1, y1)), ids);
+        continue;
+      }
+
+      for (long x = x0; x <= x1; ++x) {
+        this.tree.find(bound(key(level, x, y0)), bound(key(level, x, y1)), ids);
+      }
+
+    }
+
+    int[] sorted = ids.toArray();
+    Arrays.sort(sorted);
+
+    // a feature may be in more than one cell.
+    int count = 0;
+
+    for (int i = 0; i < sorted.length; ++i) {
+      if (count == 0 || sorted[count - 1] != sorted[i]) {
+        sorted[count++] = sorted[i];
+      }
+    }
+
+    return Arrays.copyOf(sorted, count);
+
+  }
+
+  private GeoBTree.Bound bound(long key) {
+    GeoBuffer file = this.tree.getFile();
+    return pos -> Long.compareUnsigned(file.readUInt32At(pos) | (file.readUInt32At(pos + 4) << 32), key);
+  }
+
+  void close() {
+    this.tree.close();
+  }
+
+}
@@ -0,0 +1,54 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where the files of a geodatabase are read from.
+ *
+ * Files are named as they are in the GDB folder, e.g "gdb" or
+ * "a00000001.gdbtable". Closing the store releases anything it holds, but
+ * buffers already opened from it are closed by whoever opened them.
+ *
+ * @see GeoPathStore
+ * @see GeoMemoryStore
+ * @see GeoCachingStore
+ */
+
+public interface GeoStore extends AutoCloseable {
+
+  /**
+   * Returns true if the named file exists.
+   */
+
+  boolean exists(String name);
+
+  /**
+   * The names of all the files in the store.
+   */
+
+  List<String> list() throws IOException;
+
+  /**
+   * Opens a buffer over the named file.
+   *
+   * @throws java.nio.file.NoSuchFileException
+   *           if it doesn't exist.
+   */
+
+  GeoBuffer open(String name) throws IOException;
+
+  /**
+   * When the named file was last modified, in milliseconds since the epoch, or
+   * -1 if the store can't tell.
+   */
+
+  default long lastModified(String name) {
+    return -1;
+  }
+
+  @Override
+  default void close() {
+  }
+
+}
@@ -1,13 +1,22 @@
 package io.zrz.jgdb;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 import io.zrz.jgdb.GeoIndexFile.IndexEntry;
+import io.zrz.jgdb.shape.Envelope;
+import io.zrz.jgdb.shape.GeometryValue;
 
 public class GeoTable implements AutoCloseable, GeoLayer {
 
@@ -15,10 +24,50 @@ public class GeoTable implements AutoCloseable, GeoLayer {
   private final long id;
   private FileGDBTable table;
   private GeoIndexFile index;
+  private boolean recovered;
+
+  /**
+   * the attribute indexes by upper case field name, loaded the first time one
+   * is asked for. guarded by this.
+   */
+
+  private Map<String, GeoAttributeIndex> attributeIndexes;
+
+  /**
+   * the spatial index, opened the first time it's needed. guarded by this.
+   */
+
+  private GeoSpatialIndex spatialIndex;
+  private boolean spatialIndexOpened;
+
+  /**
+   * an R-tree to use for queries in place of the spatial index.
+   */
+
+  private volatile GeoRTree rtree;
+
+  /**
+   * for a selection, the table it was selected from and the fields in it.
+   */
+
+  private final GeoTable parent;
+  private final FileGDBTable.Projection projection;
 
   GeoTable(final AbstractGeoDB db, final long id) {
     this.db = db;
     this.id = id;
+    this.parent = null;
+    this.projection = null;
+  }
+
+  private GeoTable(final GeoTable parent, final FileGDBTable.Projection projection) {
+    this.db = parent.db;
+    this.id = parent.id;
+    this.table = parent.table;
+    this.index = parent.index;
+    this.recovered = parent.recovered;
+    this.parent = parent;
+    this.projection = projection;
   }
 
   public int getTableId() {
@@ -29,28 +78,47 @@ public class GeoTable implements AutoCloseable, GeoLayer {
     return this.table.getVersion();
   }
 
+  /**
+   * True if the .gdbtablx of this table was missing, and the rows were found by
+   * walking the .gdbtable instead. They're numbered in the order they're
+   * stored, which only matches their OBJECTIDs if none have been deleted.
+   */
+
+  public boolean isRecovered() {
+    return this.recovered;
+  }
+
   public boolean open() {
 
-    final Path file = this.db.getTableFile(this.id, "gdbtable");
+    final String file = this.db.getTableFile(this.id, "gdbtable");
 
-    if (!Files.exists(file)) {
+    if (!this.db.store.exists(file)) {
       return false;
     }
 
     // open the table itself.
     try {
-      this.table = new FileGDBTable(file);
+      this.table = new FileGDBTable(this.db.openFile(file));
     } catch (final IOException e) {
       this.close();
       throw new GeoDBException(e);
     }
 
-    // open the index.
+    // open the index, or rebuild it from the table if it's gone.
     try {
-      this.index = new GeoIndexFile(this.db.getTableFile(this.id, "gdbtablx"));
+      final String indexFile = this.db.getTableFile(this.id, "gdbtablx");
+      if (this.db.store.exists(indexFile)) {
+        this.index = new GeoIndexFile(this.db.openFile(indexFile));
+      } else {
+        this.index = GeoIndexFile.recover(this.table.findRows());
+        this.recovered = true;
+      }
     } catch (final IOException e) {
       this.close();
       throw new GeoDBException(e);
+    } catch (final GeoDBException e) {
+      this.close();
+      throw e;
     }
 
     return true;
@@ -67,15 +135,294 @@ public class GeoTable implements AutoCloseable, GeoLayer {
 
   @Override
   public GeoFeature getFeature(final int featureId) {
-    final int offset = this.index.getFeatureOffset(featureId - 1);
+    final long offset = this.index.getFeatureOffset(featureId - 1);
     if (offset == -1) {
       return null;
     }
-    return this.table.getRow(featureId, offset);
+    return this.row(featureId, offset);
+  }
+
+  /**
+   * reads a row, with only the selected fields if this is a selection.
+   */
+
+  private GeoFeature row(final long featureId, final long offset) {
+    if (this.projection == null) {
+      return this.table.getRow(featureId, offset);
+    }
+    return this.table.getRow(featureId, offset, this.projection);
+  }
+
+  /**
+   * A view of this table with only the named fields, in the order given. The
+   * other fields of each row are skipped over rather than decoded, which saves
+   * the most on geometry, string and binary fields.
+   * 
+   * The view shares the files and indexes of this table, and closing it leaves
+   * the table open.
+   */
+
+  @Override
+  public GeoTable select(final String... fieldNames) {
+    final GeoTable root = (this.parent == null) ? this : this.parent;
+    return new GeoTable(root, this.table.project(fieldNames));
+  }
+
+  @Override
+  public List<GeoFeature> getFeatures(final int[] featureIds) {
+    final GeoFeature[] features = new GeoFeature[featureIds.length];
+    this.fetch(featureIds, (feature, i) -> features[i] = feature);
+    return Arrays.asList(features);
+  }
+
+  @Override
+  public void getFeatures(final int[] featureIds, final RowConsumer consumer) {
+    this.fetch(featureIds, (feature, i) -> consumer.accept(feature));
+  }
+
+  /**
+   * resolves the offsets of all the features first, then reads them in offset
+   * order, passing each to the listener with its position in the request.
+   * features requested more than once are only decoded once.
+   */
+
+  private void fetch(final int[] featureIds, final ObjIntConsumer<GeoFeature> listener) {
+
+    // the offsets of the features which exist, and their positions in the
+    // request, sorted together.
+    final long[] offsets = new long[featureIds.length];
+    final int[] positions = new int[featureIds.length];
+    int count = 0;
+
+    for (int i = 0; i < featureIds.length; ++i) {
+      final long offset = this.index.getFeatureOffset(featureIds[i] - 1);
+      if (offset != -1) {
+        offsets[count] = offset;
+        positions[count++] = i;
+      }
+    }
+
+    GeoIndexFile.sort(offsets, positions, 0, count);
+
+    GeoFeature last = null;
+
+    for (int k = 0; k < count; ++k) {
+      final int i = positions[k];
+      if (last == null || last.getFeatureId() != featureIds[i]) {
+        last = this.row(featureIds[i], offsets[k]);
+      }
+      listener.accept(last, i);
+    }
+
+  }
+
+  /**
+   * Uses the R-tree set with {@link #setRTree(GeoRTree)} or the .spx of the
+   * table when there is one to find the candidates, otherwise checks every
+   * feature.
+   */
+
+  @Override
+  public List<GeoFeature> query(final Envelope envelope) {
+
+    if (this.parent != null) {
+      // the selection may not have the shape to check.
+      return this.getFeatures(this.parent.query(envelope).stream().mapToInt(f -> (int) f.getFeatureId()).toArray());
+    }
+
+    final int[] candidates;
+    final GeoRTree tree = this.rtree;
+
+    if (tree != null) {
+      candidates = tree.search(envelope);
+    } else {
+      final GeoSpatialIndex spx = this.getSpatialIndex();
+      if (spx == null) {
+        return GeoLayer.super.query(envelope);
+      }
+      candidates = spx.candidates(envelope);
+    }
+
+    final int shape = this.getFields().indexOf(this.getShapeField());
+    final List<GeoFeature> features = new ArrayList<>();
+
+    this.getFeatures(candidates, feature -> {
+      final GeometryValue geom = feature.getValue(shape).geometryValue();
+      final Envelope bounds = (geom == null) ? null : Envelope.of(geom);
+      if (bounds != null && bounds.intersects(envelope)) {
+        features.add(feature);
+      }
+    });
+
+    // in the order of the table, as a scan would return them.
+    features.sort((a, b) -> Long.compare(a.getFeatureId(), b.getFeatureId()));
+
+    return features;
+
+  }
+
+  /**
+   * Sets an R-tree built over this table (see {@link GeoRTree#build(GeoLayer)})
+   * to use for {@link #query(Envelope)}, or null to go back to the .spx.
+   */
+
+  public void setRTree(final GeoRTree rtree) {
+    if (this.parent != null) {
+      this.parent.setRTree(rtree);
+      return;
+    }
+    this.rtree = rtree;
+  }
+
+  /**
+   * the size of the .gdbtable.
+   */
+
+  long getFileSize() {
+    return this.table.getFileSize();
+  }
+
+  /**
+   * when the .gdbtable was last modified, or -1 if the store doesn't know.
+   */
+
+  long getLastModified() {
+    return this.db.store.lastModified(this.db.getTableFile(this.id, "gdbtable"));
+  }
+
+  private synchronized GeoSpatialIndex getSpatialIndex() {
+
+    if (!this.spatialIndexOpened) {
+
+      this.spatialIndexOpened = true;
+
+      final String file = this.db.getTableFile(this.id, "spx");
+      final GeoField shape = this.getShapeField();
+
+      if (shape != null && shape.getType() instanceof GeometryFieldType && this.db.store.exists(file)) {
+
+        final double[] gridSizes = ((GeometryFieldType) shape.getType()).getGridSizes();
+
+        if (gridSizes != null) {
+          try {
+            this.spatialIndex = new GeoSpatialIndex(this.db.openFile(file), gridSizes);
+          } catch (final IOException e) {
+            throw new GeoDBException(e);
+          }
+        }
+
+      }
+
+    }
+
+    return this.spatialIndex;
+
+  }
+
+  @Override
+  public synchronized Optional<GeoAttributeIndex> getAttributeIndex(final String fieldName) {
+    if (this.parent != null) {
+      return this.parent.getAttributeIndex(fieldName);
+    }
+    if (this.attributeIndexes == null) {
+      this.attributeIndexes = this.openAttributeIndexes();
+    }
+    return Optional.ofNullable(this.attributeIndexes.get(fieldName.trim().toUpperCase(Locale.ROOT)));
+  }
+
+  /**
+   * opens the .atx of each index listed in the .gdbindexes. where a field has
+   * both a plain and a LOWER() index, the plain one is used.
+   */
+
+  private Map<String, GeoAttributeIndex> openAttributeIndexes() {
+
+    final Map<String, GeoAttributeIndex> indexes = new HashMap<>();
+    final String file = this.db.getTableFile(this.id, "gdbindexes");
+
+    if (!this.db.store.exists(file)) {
+      return indexes;
+    }
+
+    try {
+
+      final List<GeoAttributeIndex.Definition> defs;
+      final GeoBuffer buffer = this.db.openFile(file);
+
+      try {
+        defs = GeoAttributeIndex.readDefinitions(buffer);
+      } finally {
+        buffer.close();
+      }
+
+      for (final GeoAttributeIndex.Definition def : defs) {
+
+        final String name = GeoAttributeIndex.fieldName(def.getExpression()).toUpperCase(Locale.ROOT);
+        final String atx = this.db.getTableFile(this.id, def.getName() + ".atx");
+        final Optional<GeoField> field = this.table.getFields().stream().filter(f -> f.getName().trim().equalsIgnoreCase(name)).findAny();
+
+        if (!field.isPresent() || !this.db.store.exists(atx)) {
+          // OBJECTID, spatial indexes, etc.
+          continue;
+        }
+
+        final GeoAttributeIndex existing = indexes.get(name);
+
+        if (existing != null && existing.getExpression().trim().equalsIgnoreCase(name)) {
+          continue;
+        }
+
+        final GeoAttributeIndex index = new GeoAttributeIndex(def.getName(), def.getExpression(), field.get(), this.db.openFile(atx));
+
+        if (existing != null) {
+          existing.close();
+        }
+
+        indexes.put(name, index);
+
+      }
+
+    } catch (final IOException e) {
+      indexes.values().forEach(GeoAttributeIndex::close);
+      throw new GeoDBException(e);
+    }
+
+    return indexes;
+
   }
 
+  /**
+   * Closes this table, once everyone it's been handed out to by the database
+   * has closed it too. Rows read from it can't be used once it's closed.
+   */
+
   @Override
   public void close() {
+    if (this.parent != null) {
+      // the files belong to the table the selection was made from.
+      return;
+    }
+    if (this.db.release(this)) {
+      this.closeFiles();
+    }
+  }
+
+  /**
+   * closes the files of the table, whoever else is using it.
+   */
+
+  void closeFiles() {
+    synchronized (this) {
+      if (this.attributeIndexes != null) {
+        this.attributeIndexes.values().forEach(GeoAttributeIndex::close);
+        this.attributeIndexes = null;
+      }
+      if (this.spatialIndex != null) {
+        this.spatialIndex.close();
+        this.spatialIndex = null;
+      }
+      this.spatialIndexOpened = false;
+    }
     if (this.table != null) {
       this.table.close();
       this.table = null;
@@ -84,8 +431,23 @@ public class GeoTable implements AutoCloseable, GeoLayer {
       this.index.close();
       this.index = null;
     }
-    this.db.closed(this.id);
+  }
 
+  @Override
+  public void prefetch() {
+    this.index.prefetch();
+    this.table.prefetch();
+  }
+
+  /**
+   * {@inheritDoc} Interning applies to the table, so to every view of it.
+   */
+
+  @Override
+  public void intern(String... fieldNames) {
+    for (String name : fieldNames) {
+      this.table.intern(this.table.getField(name));
+    }
   }
 
   @Override
@@ -94,32 +456,44 @@ public class GeoTable implements AutoCloseable, GeoLayer {
   }
 
   public List<GeoField> getFields() {
+    if (this.projection != null) {
+      return this.projection.getFields();
+    }
     return this.table.getFields();
   }
 
   public GeoField getField(int id) {
-    return table.getFields().get(id);
+    return this.getFields().get(id);
   }
 
   public GeoField getField(String name) {
-    return table.getFields().get(getFieldId(name));
+    return this.getFields().get(getFieldId(name));
   }
 
   public int getFieldId(String name) {
+    if (this.projection != null) {
+      return this.projection.getField(name);
+    }
     return this.table.getField(name);
   }
 
+  @Override
+  public FieldRef fieldRef(String name) {
+    FileGDBTable.Projection projection = (this.projection == null) ? this.table.project() : this.projection;
+    return new FieldRef(name, projection, projection.getField(name));
+  }
+
   /**
    * 
    */
 
   public Optional<GeoField> getFeatureIdField() {
-    return this.table.getFields().stream().filter(a -> "objid".equalsIgnoreCase(a.getName())).findAny();
+    return this.getFields().stream().filter(a -> "objid".equalsIgnoreCase(a.getName())).findAny();
   }
 
   @Override
   public boolean hasGeometry() {
-    return this.table.getFields().stream().anyMatch(a -> "shape".equalsIgnoreCase(a.getName()));
+    return this.getFields().stream().anyMatch(a -> "shape".equalsIgnoreCase(a.getName()));
   }
 
   /**
@@ -127,7 +501,7 @@ public class GeoTable implements AutoCloseable, GeoLayer {
    */
 
   public GeoField getShapeField() {
-    return this.table.getFields().stream().filter(a ->"shape".equalsIgnoreCase(a.getName())).findAny().orElse(null);
+    return this.getFields().stream().filter(a ->"shape".equalsIgnoreCase(a.getName())).findAny().orElse(null);
   }
 
   /**
@@ -145,6 +519,117 @@ public class GeoTable implements AutoCloseable, GeoLayer {
     return table;
   }
   
+  /**
+   * A spliterator over the features with (zero based) IDs in a range, which
+   * splits on the 1024 row blocks of the index. Rows are read with positional
+   * reads, so each split can be traversed on a different thread.
+   * 
+   * The size is only an estimate, the number of entries the index has for the
+   * range, which includes rows deleted from blocks that are still present.
+   */
+
+  private class BlockSpliterator implements Spliterator<GeoFeature> {
+
+    private int id;
+    private final int end;
+
+    private BlockSpliterator(final int id, final int end) {
+      this.id = id;
+      this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super GeoFeature> action) {
+
+      while ((this.id = index.nextPresentRow(this.id)) < this.end) {
+
+        final int featureId = ++this.id;
+        final long offset = index.getFeatureOffset(featureId - 1);
+
+        if (offset != -1) {
+          action.accept(row(featureId, offset));
+          return true;
+        }
+
+      }
+
+      return false;
+
+    }
+
+    @Override
+    public Spliterator<GeoFeature> trySplit() {
+
+      final int mid = (int) ((((long) this.id + this.end) >>> 1) & ~1023L);
+
+      if (mid <= this.id || mid >= this.end) {
+        return null;
+      }
+
+      final BlockSpliterator prefix = new BlockSpliterator(this.id, mid);
+      this.id = mid;
+      return prefix;
+
+    }
+
+    @Override
+    public long estimateSize() {
+      return index.countEntries(this.id, this.end);
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | IMMUTABLE | NONNULL;
+    }
+
+  }
+
+  @Override
+  public Spliterator<GeoFeature> spliterator() {
+    return new BlockSpliterator(0, this.index.getNumberOfRows());
+  }
+
+  @Override
+  public RowCursor cursor(final GeoScanOrder order) {
+    return new RowCursor(this.table, (this.projection == null) ? this.table.project() : this.projection, this.index, order);
+  }
+
+  /**
+   * Walks the rows in the order they're stored in the .gdbtable, matching each
+   * to its OBJECTID through the index sorted by offset.
+   */
+
+  @Override
+  public Iterator<GeoFeature> iterator(final GeoScanOrder order) {
+
+    if (order != GeoScanOrder.PHYSICAL) {
+      return this.iterator();
+    }
+
+    final GeoIndexFile.PhysicalOrder rows = this.index.getPhysicalOrder();
+
+    return new Iterator<GeoFeature>() {
+
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < rows.ids.length;
+      }
+
+      @Override
+      public GeoFeature next() {
+        if (this.next >= rows.ids.length) {
+          throw new NoSuchElementException();
+        }
+        final int i = this.next++;
+        return row(rows.ids[i], rows.offsets[i]);
+      }
+
+    };
+
+  }
+
   /**
    * 
    */
@@ -170,7 +655,7 @@ public class GeoTable implements AutoCloseable, GeoLayer {
           return null;
         }
         
-        return table.getRow(next.getObjectId(), next.getOffset());
+        return row(next.getObjectId(), next.getOffset());
       }
 
     };
@@ -31,4 +31,14 @@ public interface GeoValueVisitor<R> {
 
   R visitXml(Document value);
 
+  /**
+   * XML as it's stored, which by default is parsed and passed to
+   * {@link #visitXml(Document)}. Override to read it without building a
+   * document.
+   */
+
+  default R visitXml(GeoXml value) {
+    return visitXml(value.getDocument());
+  }
+
 }
@@ -0,0 +1,104 @@
+package io.zrz.jgdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * The value of an XML field, kept as the bytes stored in the table and only
+ * parsed when it's asked to be, either to a DOM {@link Document} or as a StAX
+ * stream.
+ *
+ * The parsers are kept per thread, so values can be parsed from any number of
+ * threads at once. Each parse starts from the bytes again, nothing is kept.
+ *
+ */
+
+public final class GeoXml {
+
+  private static final ThreadLocal<DocumentBuilder> BUILDERS = ThreadLocal.withInitial(() -> {
+    try {
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    } catch (ParserConfigurationException e) {
+      throw new GeoDBException(e);
+    }
+  });
+
+  private static final ThreadLocal<XMLInputFactory> FACTORIES = ThreadLocal.withInitial(XMLInputFactory::newInstance);
+
+  private final byte[] data;
+
+  GeoXml(byte[] data) {
+    this.data = data;
+  }
+
+  /**
+   * The number of bytes of XML.
+   */
+
+  public int length() {
+    return this.data.length;
+  }
+
+  public byte[] getBytes() {
+    return this.data.clone();
+  }
+
+  public InputStream openStream() {
+    return new ByteArrayInputStream(this.data);
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(this.data);
+  }
+
+  /**
+   * Parses the XML to a new DOM document.
+   */
+
+  public Document getDocument() {
+    DocumentBuilder builder = BUILDERS.get();
+    try {
+      return builder.parse(openStream());
+    } catch (SAXException | IOException e) {
+      throw new GeoDBException(e);
+    } finally {
+      builder.reset();
+    }
+  }
+
+  /**
+   * A StAX reader over the XML, for looking through it without building a
+   * document. The caller should close it.
+   */
+
+  public XMLStreamReader createReader() {
+    try {
+      return FACTORIES.get().createXMLStreamReader(openStream());
+    } catch (XMLStreamException e) {
+      throw new GeoDBException(e);
+    }
+  }
+
+  /**
+   * The XML as text.
+   */
+
+  @Override
+  public String toString() {
+    return new String(this.data, StandardCharsets.UTF_8);
+  }
+
+}
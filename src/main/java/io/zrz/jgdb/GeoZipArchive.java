@@ -0,0 +1,353 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The central directory of a zip archive on the local disk, used to read the
+ * files of a geodatabase opened through the zip {@link java.nio.file.FileSystem}
+ * without going through it.
+ *
+ * The zip filesystem can only stream entries from the start, so instead each
+ * entry is located in the archive itself: entries stored uncompressed are
+ * mapped in place, and deflated ones are inflated onto the heap when the file
+ * is opened, reading the compressed bytes through the channel a block at a
+ * time.
+ *
+ */
+
+final class GeoZipArchive {
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_HEADER = 0x06054b50;
+  private static final int ZIP64_END_HEADER = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  // the end record, plus the largest comment it can be followed by.
+  private static final int MAX_END = 22 + 0xFFFF;
+
+  /**
+   * how much of a deflated entry is read at a time to inflate.
+   */
+
+  private static final int INFLATE_BLOCK = 64 * 1024;
+
+  /**
+   * The location of an entry in the archive.
+   */
+
+  private static final class Entry {
+
+    private int flags;
+    private int method;
+    private long compressedSize;
+    private long size;
+    private long headerOffset;
+
+  }
+
+  private final Path archive;
+  private final Map<String, Entry> entries;
+
+  private GeoZipArchive(Path archive, Map<String, Entry> entries) {
+    this.archive = archive;
+    this.entries = entries;
+  }
+
+  /**
+   * The archive the given path is in, if it's a path in the zip filesystem
+   * over an archive on the local disk.
+   *
+   * @return The archive, or null if the path isn't in one.
+   */
+
+  static GeoZipArchive of(Path path) throws IOException {
+
+    if (path.getFileSystem() == FileSystems.getDefault() || !"jar".equals(path.toUri().getScheme())) {
+      return null;
+    }
+
+    // jar:file:///data/x.gdb.zip!/x.gdb/
+    String ssp = path.toUri().getRawSchemeSpecificPart();
+    int sep = ssp.indexOf("!/");
+
+    if (sep < 0) {
+      return null;
+    }
+
+    URI uri = URI.create(ssp.substring(0, sep));
+
+    if (!"file".equals(uri.getScheme())) {
+      // an archive nested in another one.
+      return null;
+    }
+
+    return read(Paths.get(uri));
+
+  }
+
+  /**
+   * reads the central directory of the given archive.
+   */
+
+  static GeoZipArchive read(Path archive) throws IOException {
+
+    try (RandomAccessFile file = new RandomAccessFile(archive.toFile(), "r")) {
+
+      FileChannel channel = file.getChannel();
+      long length = channel.size();
+
+      int tailSize = (int) Math.min(length, MAX_END);
+      ByteBuffer tail = read(channel, length - tailSize, tailSize);
+
+      int end = -1;
+
+      for (int i = tailSize - 22; i >= 0; --i) {
+        if (tail.getInt(i) == END_HEADER) {
+          end = i;
+          break;
+        }
+      }
+
+      if (end < 0) {
+        throw new GeoDBException(String.format("%s is not a zip archive", archive));
+      }
+
+      long count = tail.getShort(end + 10) & 0xFFFF;
+      long dirSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+      long dirOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+      if (count == 0xFFFF || dirSize == 0xFFFFFFFFL || dirOffset == 0xFFFFFFFFL) {
+
+        // zip64, the real values are in a record found through the locator.
+        if (end < 20 || tail.getInt(end - 20) != ZIP64_LOCATOR) {
+          throw new GeoDBException(String.format("%s: missing zip64 end of central directory", archive));
+        }
+
+        ByteBuffer end64 = read(channel, tail.getLong(end - 20 + 8), 56);
+
+        if (end64.getInt(0) != ZIP64_END_HEADER) {
+          throw new GeoDBException(String.format("%s: invalid zip64 end of central directory", archive));
+        }
+
+        count = end64.getLong(32);
+        dirSize = end64.getLong(40);
+        dirOffset = end64.getLong(48);
+
+      }
+
+      if (dirSize > Integer.MAX_VALUE) {
+        throw new GeoDBException(String.format("%s: central directory too large", archive));
+      }
+
+      ByteBuffer dir = read(channel, dirOffset, (int) dirSize);
+
+      Map<String, Entry> entries = new HashMap<>();
+
+      int pos = 0;
+
+      for (long i = 0; i < count; ++i) {
+
+        if (dir.getInt(pos) != CENTRAL_HEADER) {
+          throw new GeoDBException(String.format("%s: invalid central directory entry %d", archive, i));
+        }
+
+        Entry entry = new Entry();
+        entry.flags = dir.getShort(pos + 8) & 0xFFFF;
+        entry.method = dir.getShort(pos + 10) & 0xFFFF;
+        entry.compressedSize = dir.getInt(pos + 20) & 0xFFFFFFFFL;
+        entry.size = dir.getInt(pos + 24) & 0xFFFFFFFFL;
+        entry.headerOffset = dir.getInt(pos + 42) & 0xFFFFFFFFL;
+
+        int nameLength = dir.getShort(pos + 28) & 0xFFFF;
+        int extraLength = dir.getShort(pos + 30) & 0xFFFF;
+        int commentLength = dir.getShort(pos + 32) & 0xFFFF;
+
+        byte[] name = new byte[nameLength];
+        dir.get(pos + 46, name);
+
+        readZip64(dir, pos + 46 + nameLength, extraLength, entry);
+
+        entries.put(new String(name, (entry.flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1), entry);
+
+        pos += 46 + nameLength + extraLength + commentLength;
+
+      }
+
+      return new GeoZipArchive(archive, entries);
+
+    }
+
+  }
+
+  /**
+   * fills in the sizes and offset too large for the central directory entry
+   * from its zip64 extra field, in the order they're stored.
+   */
+
+  private static void readZip64(ByteBuffer dir, int pos, int length, Entry entry) {
+
+    int end = pos + length;
+
+    while (pos + 4 <= end) {
+
+      int id = dir.getShort(pos) & 0xFFFF;
+      int size = dir.getShort(pos + 2) & 0xFFFF;
+
+      if (id == 0x0001) {
+        int p = pos + 4;
+        if (entry.size == 0xFFFFFFFFL) {
+          entry.size = dir.getLong(p);
+          p += 8;
+        }
+        if (entry.compressedSize == 0xFFFFFFFFL) {
+          entry.compressedSize = dir.getLong(p);
+          p += 8;
+        }
+        if (entry.headerOffset == 0xFFFFFFFFL) {
+          entry.headerOffset = dir.getLong(p);
+        }
+        return;
+      }
+
+      pos += 4 + size;
+
+    }
+
+  }
+
+  private static ByteBuffer read(FileChannel channel, long pos, int len) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, pos + buf.position()) < 0) {
+        throw new GeoDBException(String.format("unexpected end of archive reading %d bytes at %d", len, pos));
+      }
+    }
+    return buf;
+  }
+
+  /**
+   * Opens a buffer over the given path in the zip filesystem of this archive.
+   */
+
+  GeoBuffer open(Path path) throws IOException {
+
+    String name = path.toAbsolutePath().toString().substring(1);
+
+    Entry entry = this.entries.get(name);
+
+    if (entry == null) {
+      throw new NoSuchFileException(name, this.archive.toString(), null);
+    }
+
+    if ((entry.flags & 1) != 0) {
+      throw new GeoDBException(String.format("%s is encrypted", name));
+    }
+
+    RandomAccessFile file = new RandomAccessFile(this.archive.toFile(), "r");
+
+    try {
+
+      ByteBuffer header = read(file.getChannel(), entry.headerOffset, 30);
+
+      if (header.getInt(0) != LOCAL_HEADER) {
+        throw new GeoDBException(String.format("%s: invalid local header", name));
+      }
+
+      long data = entry.headerOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+      switch (entry.method) {
+        case STORED:
+          // the mapping owns the file now.
+          return new GeoMappedFileBuffer(file, data, entry.size, GeoMappedFileBuffer.DEFAULT_CHUNK_SHIFT);
+        case DEFLATED:
+          try {
+            return new GeoByteBuffer(inflate(file.getChannel(), data, entry, name));
+          } finally {
+            file.close();
+          }
+        default:
+          throw new GeoDBException(String.format("%s: unsupported compression method %d", name, entry.method));
+      }
+
+    } catch (IOException | RuntimeException ex) {
+      file.close();
+      throw ex;
+    }
+
+  }
+
+  private static byte[] inflate(FileChannel channel, long pos, Entry entry, String name) throws IOException {
+
+    if (entry.size > Integer.MAX_VALUE - 8) {
+      throw new GeoDBException(String.format("%s is too large to inflate (%d bytes), store it uncompressed", name, entry.size));
+    }
+
+    ByteBuffer input = ByteBuffer.allocate((int) Math.min(INFLATE_BLOCK, entry.compressedSize));
+
+    byte[] data = new byte[(int) entry.size];
+    ByteBuffer output = ByteBuffer.wrap(data);
+
+    Inflater inflater = new Inflater(true);
+
+    try {
+
+      long read = 0;
+
+      while (output.hasRemaining() && !inflater.finished() && !inflater.needsDictionary()) {
+
+        if (inflater.needsInput()) {
+
+          if (read == entry.compressedSize) {
+            break;
+          }
+
+          input.clear();
+          input.limit((int) Math.min(input.capacity(), entry.compressedSize - read));
+
+          if (channel.read(input, pos + read) < 0) {
+            throw new GeoDBException(String.format("%s: unexpected end of archive", name));
+          }
+
+          read += input.position();
+          input.flip();
+          inflater.setInput(input);
+
+        }
+
+        inflater.inflate(output);
+
+      }
+
+    } catch (DataFormatException ex) {
+      throw new GeoDBException(ex);
+    } finally {
+      inflater.end();
+    }
+
+    if (output.hasRemaining()) {
+      throw new GeoDBException(String.format("%s: inflated %d of %d bytes", name, output.position(), entry.size));
+    }
+
+    return data;
+
+  }
+
+}
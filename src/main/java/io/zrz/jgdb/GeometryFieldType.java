@@ -25,6 +25,12 @@ public class GeometryFieldType implements FieldType {
 
   private double xmin, ymin, xmax, ymax;
 
+  /**
+   * the size of the cells in each level of the spatial index grid.
+   */
+
+  private double[] gridSizes;
+
   @Override
   public Class<?> getJavaType() {
     return Object.class;
@@ -99,6 +105,22 @@ public class GeometryFieldType implements FieldType {
 
   }
 
+  /**
+   * decodes from a cursor over the file rather than a copy of the rest of the
+   * row.
+   */
+
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    GeoBuffer cursor = file.duplicate();
+    try {
+      cursor.seek(pos);
+      return read(cursor);
+    } finally {
+      cursor.close();
+    }
+  }
+
   private PointValue parsePoint(ShapeModifiers stype, GeoBuffer buffer, long len) {
 
     // GeoBuffer buffer = new GeoFileBuffer(cfile, len);
@@ -230,9 +252,16 @@ public class GeometryFieldType implements FieldType {
     }
 
     // --
+    // the coordinates are delta encoded streams: interleaved x/y, then z, then
+    // m. each stream is decoded in bulk, and one array reused for all of them.
+
+    long[] deltas = new long[npoints * 2];
+
+    buffer.readVarInt64s(deltas, npoints * 2);
 
     long dx = 0;
     long dy = 0;
+    int d = 0;
 
     for (int i = 0; i < ngeoms; ++i) {
 
@@ -240,11 +269,8 @@ public class GeometryFieldType implements FieldType {
 
       for (int x = 0; x < point.x.length; ++x) {
 
-        long vi = buffer.readVarInt64();
-        dx += vi;
-
-        vi = buffer.readVarInt64();
-        dy += vi;
+        dx += deltas[d++];
+        dy += deltas[d++];
 
         point.x[x] = (dx / this.xyscale) + this.xorigin;
         point.y[x] = (dy / this.xyscale) + this.yorigin;
@@ -256,24 +282,26 @@ public class GeometryFieldType implements FieldType {
     // ---
 
     if (stype.hasZ()) {
+      buffer.readVarInt64s(deltas, npoints);
       long dz = 0;
+      d = 0;
       for (int i = 0; i < ngeoms; ++i) {
         Point point = geom.points[i];
         for (int x = 0; x < point.x.length; ++x) {
-          long vi = buffer.readVarInt64();
-          dz += vi;
+          dz += deltas[d++];
           point.z[x] = (dz / this.zscale) + this.zorigin;
         }
       }
     }
 
     if (stype.hasM()) {
+      buffer.readVarInt64s(deltas, npoints);
       long dm = 0;
+      d = 0;
       for (int i = 0; i < ngeoms; ++i) {
         Point point = geom.points[i];
         for (int x = 0; x < point.x.length; ++x) {
-          long vi = buffer.readVarInt64();
-          dm += vi;
+          dm += deltas[d++];
           point.m[x] = (dm / this.mscale) + this.morigin;
         }
       }
@@ -20,6 +20,11 @@ import lombok.Value;
     return file.readInt32();
   }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return file.readInt32At(pos);
+  }
+
   @Override
   public Object getDefaultValue() {
     return defaultValue;
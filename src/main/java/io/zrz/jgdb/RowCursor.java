@@ -0,0 +1,98 @@
+package io.zrz.jgdb;
+
+/**
+ * Scans a table one row at a time through a single reusable {@link GeoRow},
+ * for reading every row without allocating anything per row:
+ *
+ * <pre>
+ * try (RowCursor c = layer.cursor()) {
+ *   while (c.next()) {
+ *     total += c.getInt(1);
+ *   }
+ * }
+ * </pre>
+ *
+ * The cursor is moved on to each row in turn, so values must be read before
+ * the next call to {@link #next()}; use {@link GeoLayer#getFeature(int)} for a
+ * row to keep. Values aren't kept once decoded, so each field should only be
+ * read once per row. A cursor must only be used by one thread.
+ *
+ */
+
+public final class RowCursor extends GeoRow implements AutoCloseable {
+
+  private final GeoIndexFile index;
+
+  /**
+   * the rows in the order they're stored, when scanning in that order.
+   */
+
+  private final GeoIndexFile.PhysicalOrder order;
+
+  /**
+   * the (zero based) ID, or position in the physical order, of the next row.
+   */
+
+  private int next;
+  private boolean closed;
+
+  RowCursor(FileGDBTable table, FileGDBTable.Projection projection, GeoIndexFile index, GeoScanOrder scanOrder) {
+    super(table, projection);
+    this.index = index;
+    this.order = (scanOrder == GeoScanOrder.PHYSICAL) ? index.getPhysicalOrder() : null;
+  }
+
+  /**
+   * Moves to the next row.
+   *
+   * @return false if there are no more rows.
+   */
+
+  public boolean next() {
+
+    if (this.closed) {
+      return false;
+    }
+
+    if (this.order != null) {
+
+      if (this.next >= this.order.ids.length) {
+        return false;
+      }
+
+      this.moveTo(this.order.ids[this.next], this.order.offsets[this.next]);
+      ++this.next;
+      return true;
+
+    }
+
+    while ((this.next = this.index.nextPresentRow(this.next)) < this.index.getNumberOfRows()) {
+
+      final int id = this.next++;
+      final long offset = this.index.getFeatureOffset(id);
+
+      if (offset != -1) {
+        this.moveTo(id + 1, offset);
+        return true;
+      }
+
+    }
+
+    return false;
+
+  }
+
+  private void moveTo(long featureId, long offset) {
+    moveTo(featureId, offset + 4, this.table.getRowLength(offset));
+  }
+
+  /**
+   * Stops the scan, after which {@link #next()} returns false.
+   */
+
+  @Override
+  public void close() {
+    this.closed = true;
+  }
+
+}
@@ -0,0 +1,176 @@
+package io.zrz.jgdb;
+
+import java.util.List;
+
+/**
+ * How to find the fields in the rows of a table, worked out once from its
+ * field descriptions when it's opened.
+ *
+ * For each field the plan has the byte and bit of its null flag, how it's
+ * stored, and either its width or that it's a length and that many bytes, so
+ * a row can be walked with a couple of array lookups per field rather than a
+ * call through its {@link FieldType}. Fields which can't be null and only have
+ * fixed width fields before them are at the same position in every row, and
+ * are found without walking at all.
+ *
+ */
+
+final class RowPlan {
+
+  /**
+   * How the value of a field is stored.
+   */
+
+  enum Kind {
+
+    SHORT(2), INT(4), FLOAT(4), DOUBLE(8), DATE(8), UUID(16),
+
+    /**
+     * UTF-8, as a length and that many bytes.
+     */
+
+    STRING(-1),
+
+    /**
+     * a length and that many bytes: binary, XML and geometry.
+     */
+
+    BLOB(-1);
+
+    private final int width;
+
+    Kind(int width) {
+      this.width = width;
+    }
+
+  }
+
+  private final int nullBytes;
+
+  /**
+   * for each field, the byte of its null flag after the start of the row, or
+   * -1 if it can't be null.
+   */
+
+  private final int[] nullByte;
+  private final int[] nullMask;
+
+  private final Kind[] kinds;
+  private final int[] widths;
+
+  /**
+   * for each field, its position after the start of the row if it's the same
+   * in every row, otherwise -1.
+   */
+
+  private final int[] fixed;
+
+  RowPlan(List<GeoField> fields) {
+
+    int count = fields.size();
+
+    this.nullByte = new int[count];
+    this.nullMask = new int[count];
+    this.kinds = new Kind[count];
+    this.widths = new int[count];
+    this.fixed = new int[count];
+
+    int nullable = 0;
+
+    for (int i = 0; i < count; ++i) {
+
+      FieldType type = fields.get(i).getType();
+
+      if (type.isNullable()) {
+        this.nullByte[i] = nullable >>> 3;
+        this.nullMask[i] = 1 << (nullable & 7);
+        ++nullable;
+      } else {
+        this.nullByte[i] = -1;
+      }
+
+      this.kinds[i] = kind(type);
+      this.widths[i] = this.kinds[i].width;
+
+    }
+
+    this.nullBytes = (nullable + 7) / 8;
+
+    int pos = this.nullBytes;
+
+    for (int i = 0; i < count; ++i) {
+      this.fixed[i] = pos;
+      if (pos >= 0) {
+        pos = (this.widths[i] < 0 || this.nullByte[i] >= 0) ? -1 : pos + this.widths[i];
+      }
+    }
+
+  }
+
+  private static Kind kind(FieldType type) {
+    if (type instanceof ShortFieldType) {
+      return Kind.SHORT;
+    } else if (type instanceof IntFieldType) {
+      return Kind.INT;
+    } else if (type instanceof FloatFieldType) {
+      return Kind.FLOAT;
+    } else if (type instanceof DoubleFieldType) {
+      return Kind.DOUBLE;
+    } else if (type instanceof DateFieldType) {
+      return Kind.DATE;
+    } else if (type instanceof UUIDFieldType) {
+      return Kind.UUID;
+    } else if (type instanceof StringFieldType) {
+      return Kind.STRING;
+    } else if (type instanceof ObjectIdFieldType) {
+      throw new GeoDBException("OBJECTID isn't stored in the row");
+    }
+    return Kind.BLOB;
+  }
+
+  /**
+   * the position of the first field of the row at the given position, after
+   * the null flags.
+   */
+
+  long firstField(long row) {
+    return row + this.nullBytes;
+  }
+
+  /**
+   * true if the given field of the row at the given position is null.
+   */
+
+  boolean isNull(GeoBuffer file, long row, int field) {
+    int b = this.nullByte[field];
+    return b >= 0 && (file.readUInt8At(row + b) & this.nullMask[field]) != 0;
+  }
+
+  /**
+   * the position after the (non null) value of the given field at the given
+   * position.
+   */
+
+  long skip(GeoBuffer file, long pos, int field) {
+    int width = this.widths[field];
+    return (width < 0) ? file.skipBlobAt(pos) : pos + width;
+  }
+
+  /**
+   * how the given field is stored.
+   */
+
+  Kind kind(int field) {
+    return this.kinds[field];
+  }
+
+  /**
+   * the position of the given field after the start of every row, or -1 if it
+   * depends on the row.
+   */
+
+  int fixedPosition(int field) {
+    return this.fixed[field];
+  }
+
+}
@@ -20,6 +20,11 @@ import lombok.Value;
     return file.readInt16();
   }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return file.readInt16At(pos);
+  }
+
   @Override
   public Object getDefaultValue() {
     return defaultValue;
@@ -0,0 +1,151 @@
+package io.zrz.jgdb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes the values of a string field with few distinct values to a shared
+ * instance of each, found by its UTF-8 bytes, so a value which has been seen
+ * before isn't decoded again.
+ *
+ * It holds at most {@link #MAX_ENTRIES} values of up to {@link #MAX_LENGTH}
+ * bytes. Once it's full, if most of the values read miss it anyway the field
+ * has too many distinct values to be worth it, and it turns itself off.
+ *
+ * Safe to use from any number of threads. Entries are immutable and published
+ * without locking, so a thread might not see one just added by another and
+ * decode the value itself; the counts deciding when to turn off are
+ * approximate for the same reason.
+ *
+ */
+
+final class StringDictionary {
+
+  static final int MAX_ENTRIES = 1024;
+  static final int MAX_LENGTH = 127;
+
+  /**
+   * the number of values read between checks of how well it's doing once it's
+   * full.
+   */
+
+  private static final int WINDOW = 4096;
+
+  private static final class Entry {
+
+    private final byte[] bytes;
+    private final int hash;
+    private final String value;
+
+    private Entry(byte[] bytes, int hash, String value) {
+      this.bytes = bytes;
+      this.hash = hash;
+      this.value = value;
+    }
+
+  }
+
+  private final Entry[] slots = new Entry[MAX_ENTRIES * 2];
+  private final AtomicInteger size = new AtomicInteger();
+
+  private volatile boolean enabled = true;
+
+  private int reads;
+  private int misses;
+
+  boolean isEnabled() {
+    return this.enabled;
+  }
+
+  int size() {
+    return this.size.get();
+  }
+
+  /**
+   * decodes the string stored as a varuint length and that many bytes at the
+   * given position, as {@link StringFieldType#read(GeoBuffer)} does.
+   */
+
+  String read(GeoBuffer file, long pos) {
+
+    // values short enough to keep have a single byte length.
+    int len = file.readUInt8At(pos);
+
+    if (len > MAX_LENGTH || !this.enabled) {
+      Utf8Slice slice = Utf8Slice.at(file, pos);
+      return (slice.byteLength() == 0) ? null : slice.toString();
+    }
+
+    if (len == 0) {
+      return null;
+    }
+
+    long start = pos + 1;
+    int hash = hash(file, start, len);
+    int mask = this.slots.length - 1;
+    int slot = hash & mask;
+
+    for (Entry entry = this.slots[slot]; entry != null; entry = this.slots[slot]) {
+      if (entry.hash == hash && entry.bytes.length == len && matches(entry.bytes, file, start)) {
+        count(false);
+        return entry.value;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    count(true);
+
+    byte[] bytes = new byte[len];
+    file.readFullyAt(start, bytes);
+    String value = new String(bytes, StandardCharsets.UTF_8);
+
+    if (this.size.get() < MAX_ENTRIES && this.size.incrementAndGet() <= MAX_ENTRIES) {
+      // the slot found empty above, or the next free one if another thread has
+      // taken it since.
+      while (this.slots[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      this.slots[slot] = new Entry(bytes, hash, value);
+    }
+
+    return value;
+
+  }
+
+  private void count(boolean miss) {
+
+    if (miss) {
+      ++this.misses;
+    }
+
+    if (++this.reads < WINDOW) {
+      return;
+    }
+
+    if (this.size.get() >= MAX_ENTRIES && this.misses > WINDOW / 2) {
+      this.enabled = false;
+    }
+
+    this.reads = 0;
+    this.misses = 0;
+
+  }
+
+  private static boolean matches(byte[] bytes, GeoBuffer file, long pos) {
+    for (int i = 0; i < bytes.length; ++i) {
+      if (bytes[i] != (byte) file.readUInt8At(pos + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(GeoBuffer file, long pos, int len) {
+    int h = len;
+    for (int i = 0; i < len; ++i) {
+      h = 31 * h + file.readUInt8At(pos + i);
+    }
+    return h ^ (h >>> 16);
+  }
+
+}
@@ -35,6 +35,12 @@ class StringFieldType implements FieldType {
 
   }
 
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    byte data[] = file.readBlobAt(pos);
+    return (data.length == 0) ? null : new String(data, StandardCharsets.UTF_8);
+  }
+
   @Override
   public Object getDefaultValue() {
     return defaultValue;
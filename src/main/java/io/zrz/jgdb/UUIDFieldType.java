@@ -24,6 +24,17 @@ public class UUIDFieldType implements FieldType {
   public Object read(GeoBuffer file) throws IOException {
     byte b[] = new byte[16];
     file.readFully(b);
+    return toUUID(b);
+  }
+
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    byte b[] = new byte[16];
+    file.readFullyAt(pos, b);
+    return toUUID(b);
+  }
+
+  private static UUID toUUID(byte[] b) {
     return UUID.fromString(
         String.format("%02X%02X%02X%02X-%02X%02X-%02X%02X-%02X%02X-%02X%02X%02X%02X%02X%02X", b[3], b[2], b[1], b[0], b[5], b[4], b[7], b[6], b[8], b[9], b[10], b[11],
             b[12], b[13], b[14], b[15]));
@@ -0,0 +1,221 @@
+package io.zrz.jgdb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A string value in place in a table's files, as its UTF-8 bytes.
+ *
+ * Comparing it to another string, testing a prefix, hashing it and copying the
+ * bytes out all work on the bytes, without decoding them. It's only decoded
+ * to a {@link String} when {@link #toString()} or one of the
+ * {@link CharSequence} methods is called, and then just once.
+ *
+ * As the bytes are read from the files of the table, it must be used before
+ * the table is closed.
+ *
+ * @see GeoRow#getUtf8(int)
+ */
+
+public final class Utf8Slice implements CharSequence {
+
+  private final GeoBuffer file;
+  private final long start;
+  private final int length;
+
+  private int hash;
+  private String string;
+
+  Utf8Slice(GeoBuffer file, long start, int length) {
+    this.file = file;
+    this.start = start;
+    this.length = length;
+  }
+
+  /**
+   * the string stored as a varuint length and that many bytes at the given
+   * position.
+   */
+
+  static Utf8Slice at(GeoBuffer file, long pos) {
+    long length = VarInts.unsignedAt(file, pos);
+    return new Utf8Slice(file, pos + VarInts.sizeOf(length), VarInts.intValueOf(length));
+  }
+
+  /**
+   * A slice holding the given string, e.g. to compare slices with or as a key
+   * to look them up by.
+   */
+
+  public static Utf8Slice of(String value) {
+    byte[] data = value.getBytes(StandardCharsets.UTF_8);
+    Utf8Slice slice = new Utf8Slice(new GeoByteBuffer(data), 0, data.length);
+    slice.string = value;
+    return slice;
+  }
+
+  /**
+   * The number of bytes in the UTF-8 encoding.
+   */
+
+  public int byteLength() {
+    return this.length;
+  }
+
+  public byte byteAt(int index) {
+    if (index < 0 || index >= this.length) {
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+    }
+    return (byte) this.file.readUInt8At(this.start + index);
+  }
+
+  public byte[] getBytes() {
+    byte[] data = new byte[this.length];
+    this.file.readFullyAt(this.start, data);
+    return data;
+  }
+
+  /**
+   * Writes the UTF-8 bytes to the stream.
+   */
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(getBytes());
+  }
+
+  /**
+   * True if this is the same string as the given one. Compared byte by byte
+   * with the UTF-8 encoding of it, without decoding this or encoding it.
+   */
+
+  public boolean contentEquals(CharSequence other) {
+    return compare(other, false);
+  }
+
+  /**
+   * True if the string starts with the given one, compared as
+   * {@link #contentEquals(CharSequence)} does.
+   */
+
+  public boolean startsWith(CharSequence prefix) {
+    return compare(prefix, true);
+  }
+
+  private boolean compare(CharSequence other, boolean prefix) {
+
+    if (other instanceof Utf8Slice) {
+      Utf8Slice slice = (Utf8Slice) other;
+      if (slice.length > this.length || (!prefix && slice.length != this.length)) {
+        return false;
+      }
+      for (int i = 0; i < slice.length; ++i) {
+        if (this.file.readUInt8At(this.start + i) != slice.file.readUInt8At(slice.start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // encode the other one as we go, as String.getBytes() would.
+    long pos = this.start;
+    long end = this.start + this.length;
+
+    for (int i = 0; i < other.length(); ++i) {
+
+      int c = other.charAt(i);
+
+      if (Character.isHighSurrogate((char) c) && i + 1 < other.length() && Character.isLowSurrogate(other.charAt(i + 1))) {
+        c = Character.toCodePoint((char) c, other.charAt(++i));
+      } else if (Character.isSurrogate((char) c)) {
+        c = '?';
+      }
+
+      int bytes = (c < 0x80) ? 1 : (c < 0x800) ? 2 : (c < 0x10000) ? 3 : 4;
+
+      if (end - pos < bytes) {
+        return false;
+      }
+
+      if (bytes == 1) {
+        if (this.file.readUInt8At(pos++) != c) {
+          return false;
+        }
+        continue;
+      }
+
+      int lead = (bytes == 2) ? 0xC0 : (bytes == 3) ? 0xE0 : 0xF0;
+
+      if (this.file.readUInt8At(pos++) != (lead | (c >>> (6 * (bytes - 1))))) {
+        return false;
+      }
+
+      for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) {
+        if (this.file.readUInt8At(pos++) != (0x80 | ((c >>> shift) & 0x3F))) {
+          return false;
+        }
+      }
+
+    }
+
+    return prefix || pos == end;
+
+  }
+
+  /**
+   * Equal to another slice with the same bytes. Never equal to a
+   * {@link String}, use {@link #contentEquals(CharSequence)} for that.
+   */
+
+  @Override
+  public boolean equals(Object other) {
+    return other == this || (other instanceof Utf8Slice && compare((Utf8Slice) other, false));
+  }
+
+  /**
+   * A hash of the bytes, which isn't the same as the hash of the decoded
+   * string.
+   */
+
+  @Override
+  public int hashCode() {
+    int h = this.hash;
+    if (h == 0 && this.length > 0) {
+      for (int i = 0; i < this.length; ++i) {
+        h = 31 * h + (byte) this.file.readUInt8At(this.start + i);
+      }
+      this.hash = h;
+    }
+    return h;
+  }
+
+  @Override
+  public int length() {
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  /**
+   * The decoded string.
+   */
+
+  @Override
+  public String toString() {
+    String s = this.string;
+    if (s == null) {
+      s = new String(getBytes(), StandardCharsets.UTF_8);
+      this.string = s;
+    }
+    return s;
+  }
+
+}
@@ -0,0 +1,111 @@
+package io.zrz.jgdb;
+
+/**
+ * Decodes the signed varints used for geometry coordinates a machine word at a
+ * time, rather than a byte at a time.
+ *
+ * The caller reads the 8 bytes at the start of the value as a little endian
+ * long; {@link #length(long)} finds the byte ending the value from its
+ * continuation bits, and {@link #signed(long, int)} gathers the 7 bit groups
+ * with shifts and masks instead of a loop.
+ *
+ * Also decodes the varuint lengths in front of strings and blobs with
+ * positional reads, for {@link GeoBuffer#skipBlobAt(long)} and friends.
+ *
+ */
+
+final class VarInts {
+
+  private static final long CONTINUATION_BITS = 0x8080808080808080L;
+
+  private VarInts() {
+  }
+
+  /**
+   * the number of bytes in the varint starting at the lowest byte of the word,
+   * or 0 if it's longer than the word.
+   */
+
+  static int length(long word) {
+    long stops = ~word & CONTINUATION_BITS;
+    if (stops == 0) {
+      return 0;
+    }
+    return (Long.numberOfTrailingZeros(stops) >>> 3) + 1;
+  }
+
+  /**
+   * reads the varuint of up to 32 bits at the given position, returning both it
+   * and the number of bytes it takes packed into one long (see
+   * {@link #valueOf(long)} and {@link #sizeOf(long)}), so nothing needs
+   * allocating to return the two.
+   */
+
+  static long unsignedAt(GeoBuffer file, long pos) {
+    long value = 0;
+    for (int i = 0; i < 5; ++i) {
+      int b = file.readUInt8At(pos + i);
+      value |= (long) (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0) {
+        return (value << 8) | (i + 1);
+      }
+    }
+    throw new IllegalArgumentException("malformed");
+  }
+
+  /**
+   * the value of a varuint read with {@link #unsignedAt(GeoBuffer, long)}.
+   */
+
+  static long valueOf(long packed) {
+    return packed >>> 8;
+  }
+
+  /**
+   * the value of a varuint read with {@link #unsignedAt(GeoBuffer, long)}, as
+   * the length of something in memory.
+   */
+
+  static int intValueOf(long packed) {
+    long value = packed >>> 8;
+    if (value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("malformed");
+    }
+    return (int) value;
+  }
+
+  /**
+   * the number of bytes of a varuint read with
+   * {@link #unsignedAt(GeoBuffer, long)}.
+   */
+
+  static int sizeOf(long packed) {
+    return (int) (packed & 0xFF);
+  }
+
+  /**
+   * decodes the signed varint of the given length at the lowest bytes of the
+   * word. the first byte has 6 bits of value and the sign, the rest 7 bits
+   * each.
+   */
+
+  static long signed(long word, int length) {
+
+    long x = (length == 8) ? word : word & ((1L << (length << 3)) - 1);
+
+    long groups = (x & 0x7FL)
+        | ((x >>> 1) & (0x7FL << 7))
+        | ((x >>> 2) & (0x7FL << 14))
+        | ((x >>> 3) & (0x7FL << 21))
+        | ((x >>> 4) & (0x7FL << 28))
+        | ((x >>> 5) & (0x7FL << 35))
+        | ((x >>> 6) & (0x7FL << 42))
+        | ((x >>> 7) & (0x7FL << 49));
+
+    long value = (groups & 0x3F) | ((groups >>> 7) << 6);
+
+    return ((x & 0x40) != 0) ? -value : value;
+
+  }
+
+}
@@ -1,15 +1,7 @@
 package io.zrz.jgdb;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
-
 import lombok.Builder;
 import lombok.Value;
 
@@ -17,23 +9,12 @@ import lombok.Value;
 @Builder
 class XmlFieldType implements FieldType {
 
-  private static DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-  private static DocumentBuilder builder;
-
-  static {
-    try {
-      builder = factory.newDocumentBuilder();
-    } catch (ParserConfigurationException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private boolean nullable;
   // private int maxlen;
   private String defaultValue;
   @Override
   public Class<?> getJavaType() {
-    return String.class;
+    return GeoXml.class;
   }
   @Override
   public Object read(GeoBuffer file) throws IOException {
@@ -44,14 +25,13 @@ class XmlFieldType implements FieldType {
 
     file.readFully(data);
 
-    Document doc;
-    try {
-      doc = builder.parse(new ByteArrayInputStream(data));
-    } catch (SAXException e) {
-      throw new GeoDBException(e);
-    }
+    // parsed when it's asked for.
+    return new GeoXml(data);
+  }
 
-    return doc;
+  @Override
+  public Object readAt(GeoBuffer file, long pos, long end) throws IOException {
+    return new GeoXml(file.readBlobAt(pos));
   }
 
   @Override
@@ -61,8 +41,8 @@ class XmlFieldType implements FieldType {
 
   @Override
   public <R> R apply(Object object, GeoValueVisitor<R> converter) {
-    return converter.visitXml((Document)object);
+    return converter.visitXml((GeoXml) object);
   }
 
 
-}
\ No newline at end of file
+}
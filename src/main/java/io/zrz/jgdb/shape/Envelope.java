@@ -0,0 +1,62 @@
+package io.zrz.jgdb.shape;
+
+import lombok.Value;
+
+/**
+ * An axis aligned bounding box.
+ */
+
+@Value
+public class Envelope {
+
+  double minX, minY, maxX, maxY;
+
+  public boolean intersects(Envelope other) {
+    return other.minX <= maxX && other.maxX >= minX && other.minY <= maxY && other.maxY >= minY;
+  }
+
+  /**
+   * The bounds of the given geometry, or null if it has no points.
+   */
+
+  public static Envelope of(GeometryValue geom) {
+
+    double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+    geom.visit(new GeometryValueVisitor() {
+
+      private void add(double x, double y) {
+        bounds[0] = Math.min(bounds[0], x);
+        bounds[1] = Math.min(bounds[1], y);
+        bounds[2] = Math.max(bounds[2], x);
+        bounds[3] = Math.max(bounds[3], y);
+      }
+
+      @Override
+      public void visitPointValue(PointValue point) {
+        add(point.getX(), point.getY());
+      }
+
+      @Override
+      public void visitMultipoint(MultiPoint multiPoint) {
+        if (multiPoint.points == null) {
+          return;
+        }
+        for (Point part : multiPoint.points) {
+          for (int i = 0; i < part.x.length; ++i) {
+            add(part.x[i], part.y[i]);
+          }
+        }
+      }
+
+    });
+
+    if (bounds[0] > bounds[2]) {
+      return null;
+    }
+
+    return new Envelope(bounds[0], bounds[1], bounds[2], bounds[3]);
+
+  }
+
+}
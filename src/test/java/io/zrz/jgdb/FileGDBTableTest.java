@@ -0,0 +1,277 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+public class FileGDBTableTest {
+
+  private static final byte[] GUID = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+  static TestTable table() {
+    return new TestTable()
+        .row((short) 7, 42, 1.5f, 2.25, "first", 1.5, new byte[] { 1, 2, 3 }, GUID, "<a>x</a>")
+        .row(null, -1, null, -0.5, null, null, null, null, null)
+        .row((short) -3, 9, 0.0f, 1e9, "third", 43000.0, new byte[0], GUID, "<b/>");
+  }
+
+  @Test
+  public void testRows() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+    long[] offsets = t.offsets();
+
+    GeoFeature first = table.getRow(1, offsets[0]);
+
+    assertEquals((short) 7, first.getValue("SHORT_F").shortValue());
+    assertEquals(42, first.getValue("INT_F").intValue());
+    assertEquals(1.5f, first.getValue("FLOAT_F").floatValue(), 0);
+    assertEquals(2.25, first.getValue("DOUBLE_F").doubleValue(), 0);
+    assertEquals("first", first.getValue("NAME").stringValue());
+    assertEquals(Instant.parse("1899-12-31T12:00:00Z"), first.getValue("DATE_F").instantValue());
+    assertArrayEquals(new byte[] { 1, 2, 3 }, first.getValue("BLOB").binaryValue());
+    assertEquals(UUID.fromString("04030201-0605-0807-090A-0B0C0D0E0F10"), first.getValue("GUID").uuidValue());
+    assertEquals("a", first.getValue("DOC").xmlValue().getDocumentElement().getTagName());
+
+    GeoFeature second = table.getRow(2, offsets[1]);
+
+    assertNull(second.getValue("SHORT_F").stringValue());
+    assertEquals(-1, second.getValue("INT_F").intValue());
+    assertNull(second.getValue("NAME").stringValue());
+    assertEquals(-0.5, second.getValue("DOUBLE_F").doubleValue(), 0);
+    assertNull(second.getValue("DOC").xmlValue());
+
+  }
+
+  @Test
+  public void testRowsAfterClose() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+    long[] offsets = t.offsets();
+
+    GeoFeature first = table.getRow(1, offsets[0]);
+    assertEquals(42, first.getValue("INT_F").intValue());
+
+    table.close();
+
+    try {
+      first.getValue("NAME");
+      fail();
+    } catch (IllegalStateException ex) {
+      // expected.
+    }
+
+    try {
+      table.getRow(2, offsets[1]);
+      fail();
+    } catch (IllegalStateException ex) {
+      // expected.
+    }
+
+  }
+
+  @Test
+  public void testLazyDecoding() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+    long[] offsets = t.offsets();
+
+    GeoFeature third = table.getRow(3, offsets[2]);
+
+    // the last field first, then back to the start.
+    assertEquals("b", third.getValue("DOC").xmlValue().getDocumentElement().getTagName());
+    assertEquals("third", third.getValue("NAME").stringValue());
+    assertEquals((short) -3, third.getValue(0).shortValue());
+
+    // decoded once.
+    assertSame(third.getValue("BLOB").binaryValue(), third.getValue("BLOB").binaryValue());
+
+    assertEquals(table.getRow(3, offsets[2]).getValue("DATE_F").instantValue(), third.getValue("DATE_F").instantValue());
+
+  }
+
+  @Test
+  public void testProjection() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+    long[] offsets = t.offsets();
+
+    FileGDBTable.Projection projection = table.project("doc", "INT_F", "NAME");
+
+    assertEquals(3, projection.getFields().size());
+    assertEquals("DOC", projection.getFields().get(0).getName());
+    assertEquals(1, projection.getField("int_f"));
+
+    GeoFeature third = table.getRow(3, offsets[2], projection);
+
+    assertEquals(3, third.getFields().size());
+    assertEquals("b", third.getValue(0).xmlValue().getDocumentElement().getTagName());
+    assertEquals(9, third.getValue(1).intValue());
+    assertEquals("third", third.getValue("NAME").stringValue());
+
+    GeoFeature second = table.getRow(2, offsets[1], table.project("DOUBLE_F"));
+    assertEquals(-0.5, second.getValue(0).doubleValue(), 0);
+
+  }
+
+  @Test
+  public void testCursor() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+    GeoIndexFile index = GeoIndexFile.recover(t.offsets());
+
+    int[] ints = new int[3];
+    boolean[] nulls = new boolean[3];
+
+    try (RowCursor c = new RowCursor(table, table.project("SHORT_F", "INT_F", "NAME"), index, GeoScanOrder.OBJECTID)) {
+      int i = 0;
+      while (c.next()) {
+        assertEquals(i + 1, c.getFeatureId());
+        nulls[i] = c.isNull(0);
+        ints[i] = c.getInt(1) + c.getInt(0);
+        if (i == 2) {
+          assertEquals("third", c.getValue(2).stringValue());
+        }
+        ++i;
+      }
+      assertFalse(c.next());
+    }
+
+    assertArrayEquals(new int[] { 49, -1, 6 }, ints);
+    assertArrayEquals(new boolean[] { false, true, false }, nulls);
+
+  }
+
+  @Test
+  public void testPrimitives() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+    long[] offsets = t.offsets();
+
+    for (int i = 0; i < offsets.length; ++i) {
+
+      GeoFeature row = table.getRow(i + 1, offsets[i]);
+      GeoFeature boxed = table.getRow(i + 1, offsets[i]);
+
+      for (int f = 0; f < 4; ++f) {
+        assertEquals(i == 1 && (f == 0 || f == 2), row.isNull(f));
+        assertEquals(row.isNull(f) ? Double.NaN : ((Number) boxed.value(f)).doubleValue(), row.getDouble(f), 0);
+      }
+
+      Instant date = boxed.getValue("DATE_F").instantValue();
+      assertEquals(row.isNull(5) ? 0 : date.toEpochMilli(), row.getEpochMillis(5));
+
+    }
+
+    GeoFeature first = table.getRow(1, offsets[0]);
+
+    assertEquals(7L, first.getLong(0));
+    assertEquals(42L, first.getLong(1));
+    assertEquals(0L, table.getRow(2, offsets[1]).getLong(0));
+
+  }
+
+  @Test
+  public void testEpochMillis() throws IOException {
+
+    // a second and a half after 1970, which is 25569 days after 1899/12/30.
+    TestTable t = new TestTable().row(null, 1, null, 0.0, null, 25569 + 1.5 / 86400, null, null, null);
+    FileGDBTable table = t.open();
+
+    assertEquals(1500, table.getRow(1, t.offsets()[0]).getEpochMillis(5));
+
+  }
+
+  @Test
+  public void testXml() throws Exception {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+
+    GeoXml xml = table.getRow(1, t.offsets()[0]).getValue("DOC").xmlHandle();
+
+    assertEquals("<a>x</a>", xml.toString());
+
+    XMLStreamReader reader = xml.createReader();
+    assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+    assertEquals("a", reader.getLocalName());
+    assertEquals("x", reader.getElementText());
+    reader.close();
+
+    // each thread parses with its own builder.
+    long parsed = IntStream.range(0, 1000).parallel()
+        .mapToObj(i -> xml.getDocument().getDocumentElement().getTextContent())
+        .filter("x"::equals)
+        .count();
+
+    assertEquals(1000, parsed);
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDoubleWrongType() throws IOException {
+    TestTable t = table();
+    t.open().getRow(1, t.offsets()[0]).getDouble(5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCursorWrongType() throws IOException {
+    FileGDBTable table = table().open();
+    try (RowCursor c = new RowCursor(table, table.project(), GeoIndexFile.recover(new long[0]), GeoScanOrder.OBJECTID)) {
+      c.getInt(4);
+    }
+  }
+
+  @Test
+  public void testFieldNames() throws IOException {
+
+    TestTable t = table();
+    FileGDBTable table = t.open();
+
+    assertEquals(4, table.getField("name"));
+    assertEquals(4, table.getField(" Name\t"));
+    assertEquals(8, table.getField("DOC"));
+
+    FileGDBTable.Projection projection = table.project("DOUBLE_F", "NAME");
+
+    FieldRef name = new FieldRef("name", projection, projection.getField("name"));
+    FieldRef other = new FieldRef("name", table.project(), table.getField("name"));
+
+    GeoFeature third = table.getRow(3, t.offsets()[2], projection);
+
+    assertEquals(1, third.getFieldId(name));
+    assertEquals(1, third.getFieldId(other));
+    assertEquals("third", third.getValue(other).stringValue());
+    assertEquals(1e9, third.getDouble(new FieldRef("Double_F", null, -1)), 0);
+
+    assertTrue(third.getUtf8(name).contentEquals("third"));
+    assertNull(table.getRow(2, t.offsets()[1]).getUtf8(4));
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProjectionUnknownField() throws IOException {
+    table().open().project("NAME", "NOPE");
+  }
+
+}
@@ -0,0 +1,154 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+public class GeoAttributeIndexTest {
+
+  private static final int PAGE = GeoBTree.PAGE_SIZE;
+
+  /**
+   * writes a two level index: a root page splitting leaves of at most perLeaf
+   * keys each.
+   */
+
+  private static byte[] index(int valueSize, int count, int perLeaf, int[] oids, BiConsumer<ByteBuffer, Integer> key) {
+
+    int maxPerPage = (PAGE - 12) / (4 + valueSize);
+    int keys = 12 + maxPerPage * 4;
+    int leaves = (count + perLeaf - 1) / perLeaf;
+
+    ByteBuffer buf = ByteBuffer.allocate(PAGE * (1 + leaves) + 22).order(ByteOrder.LITTLE_ENDIAN);
+
+    // the root.
+    buf.putInt(4, leaves - 1);
+    for (int i = 0; i < leaves; ++i) {
+      buf.putInt(8 + i * 4, 2 + i);
+      if (i < leaves - 1) {
+        buf.position(keys + i * valueSize);
+        key.accept(buf, (i + 1) * perLeaf - 1);
+      }
+    }
+
+    for (int i = 0; i < leaves; ++i) {
+      int base = PAGE * (1 + i);
+      int n = Math.min(perLeaf, count - i * perLeaf);
+      buf.putInt(base + 4, n);
+      for (int j = 0; j < n; ++j) {
+        buf.putInt(base + 12 + j * 4, oids[i * perLeaf + j]);
+        buf.position(base + keys + j * valueSize);
+        key.accept(buf, i * perLeaf + j);
+      }
+    }
+
+    int trailer = buf.capacity() - 22;
+    buf.put(trailer, (byte) valueSize);
+    buf.putInt(trailer + 2, 1);
+    buf.putInt(trailer + 6, 2);
+    buf.putInt(trailer + 10, count);
+
+    return buf.array();
+
+  }
+
+  @Test
+  public void testIntIndex() {
+
+    // key i is i / 3, so each value appears three times and runs over leaves.
+    int[] oids = new int[3000];
+    for (int i = 0; i < oids.length; ++i) {
+      oids[i] = 10000 - i;
+    }
+
+    byte[] data = index(4, oids.length, 100, oids, (buf, i) -> buf.putInt(i / 3));
+
+    GeoField field = GeoField.builder().name("COUNT").type(IntFieldType.builder().build()).build();
+    GeoAttributeIndex index = new GeoAttributeIndex("IDX_COUNT", "COUNT", field, new GeoByteBuffer(data));
+
+    assertEquals(3000, index.getValueCount());
+
+    // 33 * 3 = 99 and 101, either side of the first leaf boundary.
+    assertArrayEquals(new int[] { 10000 - 99, 10000 - 100, 10000 - 101 }, index.findEqual(33));
+    assertArrayEquals(new int[] { 10000, 10000 - 1, 10000 - 2 }, index.findEqual(0));
+    assertArrayEquals(new int[0], index.findEqual(1000));
+    assertArrayEquals(new int[0], index.findEqual(-1));
+
+    int[] range = index.findRange(500, 509);
+    assertEquals(30, range.length);
+    assertEquals(10000 - 1500, range[0]);
+    assertEquals(10000 - 1529, range[29]);
+
+    assertEquals(3000, index.findRange(null, null).length);
+    assertEquals(6, index.findRange(null, 1).length);
+    assertEquals(3, index.findRange(999, null).length);
+
+  }
+
+  @Test
+  public void testStringIndex() {
+
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 500; ++i) {
+      values.add(String.format("%s-%04d", (i < 250) ? "alpha" : "beta", i));
+    }
+
+    int[] oids = new int[values.size()];
+    for (int i = 0; i < oids.length; ++i) {
+      oids[i] = i + 1;
+    }
+
+    // 10 character keys.
+    byte[] data = index(20, values.size(), 64, oids, (buf, i) -> {
+      String value = values.get(i);
+      for (int c = 0; c < 10; ++c) {
+        buf.putChar(c < value.length() ? value.charAt(c) : ' ');
+      }
+    });
+
+    GeoField field = GeoField.builder().name("NAME").type(StringFieldType.builder().maxlen(64).build()).build();
+    GeoAttributeIndex index = new GeoAttributeIndex("IDX_NAME", "LOWER(NAME)", field, new GeoByteBuffer(data));
+
+    assertArrayEquals(new int[] { 8 }, index.findEqual("ALPHA-0007"));
+    assertArrayEquals(new int[0], index.findEqual("alpha-000"));
+    // keys are cut off at the width of the index.
+    assertArrayEquals(new int[] { 8 }, index.findEqual("alpha-0007x"));
+    assertEquals(250, index.findPrefix("beta").length);
+    assertEquals(10, index.findPrefix("alpha-001").length);
+    assertEquals(1, index.findPrefix("beta-0499").length);
+    assertArrayEquals(new int[] { 250, 251, 252 }, index.findRange("alpha-0249", "beta-0251"));
+
+  }
+
+  @Test
+  public void testDefinitions() {
+
+    ByteBuffer buf = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    buf.putInt(2);
+
+    for (String[] def : new String[][] { { "FDO_SHAPE", "SHAPE" }, { "IDX_NAME", "LOWER(NAME)" } }) {
+      buf.putInt(def[0].length());
+      def[0].chars().forEach(c -> buf.putChar((char) c));
+      buf.position(buf.position() + 12);
+      buf.putInt(def[1].length());
+      def[1].chars().forEach(c -> buf.putChar((char) c));
+      buf.position(buf.position() + 2);
+    }
+
+    List<GeoAttributeIndex.Definition> defs = GeoAttributeIndex.readDefinitions(new GeoByteBuffer(buf.array()));
+
+    assertEquals(Arrays.asList(new GeoAttributeIndex.Definition("FDO_SHAPE", "SHAPE"), new GeoAttributeIndex.Definition("IDX_NAME", "LOWER(NAME)")), defs);
+    assertEquals("NAME", GeoAttributeIndex.fieldName(defs.get(1).getExpression()));
+
+  }
+
+}
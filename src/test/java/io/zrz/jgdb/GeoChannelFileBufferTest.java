@@ -0,0 +1,114 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GeoChannelFileBufferTest {
+
+  private static Path write(byte[] data) throws IOException {
+    Path file = Files.createTempFile("jgdb", ".bin");
+    file.toFile().deleteOnExit();
+    Files.write(file, data);
+    return file;
+  }
+
+  @Test
+  public void testReadsAcrossPages() throws IOException {
+
+    byte[] data = new byte[GeoPagePool.PAGE_SIZE * 3];
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = (byte) (i * 31);
+    }
+
+    // a varuint over the end of the first page.
+    int at = GeoPagePool.PAGE_SIZE + GeoPagePool.ALIGNMENT - 1;
+    data[at] = (byte) 0x81;
+    data[at + 1] = (byte) 0x82;
+    data[at + 2] = (byte) 0x03;
+
+    GeoChannelFileBuffer buffer = GeoChannelFileBuffer.open(write(data));
+
+    try {
+
+      assertEquals(data[10] & 0xFF, buffer.readUInt8At(10));
+      assertEquals(data[data.length - 1] & 0xFF, buffer.readUInt8At(data.length - 1));
+
+      assertEquals(at + 3 + (1 | (2 << 7) | (3 << 14)), buffer.skipBlobAt(at));
+
+      buffer.seek(at);
+      assertEquals(1 | (2 << 7) | (3 << 14), buffer.readVarUInt32());
+
+      // both through the pages, and straight into the array.
+      for (int len : new int[] { 1000, GeoPagePool.PAGE_SIZE * 2 }) {
+        byte[] read = new byte[len];
+        buffer.readFullyAt(100, read);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 100 + len), read);
+      }
+
+      GeoBuffer dup = buffer.duplicate();
+      dup.seek(GeoPagePool.PAGE_SIZE - 2);
+      dup.readInt32();
+      assertEquals(GeoPagePool.PAGE_SIZE + 2, dup.getFilePointer());
+
+    } finally {
+      buffer.close();
+    }
+
+  }
+
+  @Test(expected = GeoDBException.class)
+  public void testReadPastEnd() throws IOException {
+
+    GeoChannelFileBuffer buffer = GeoChannelFileBuffer.open(write(new byte[100]));
+
+    try {
+      buffer.readUInt8At(99);
+      // the page has room for more, but the file doesn't.
+      buffer.readInt32At(98);
+    } finally {
+      buffer.close();
+    }
+
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosedBufferFailsReads() throws IOException {
+
+    GeoChannelFileBuffer buffer = GeoChannelFileBuffer.open(write(new byte[100]));
+    GeoBuffer dup = buffer.duplicate();
+
+    dup.readInt32At(10);
+    buffer.close();
+
+    dup.readInt32At(10);
+
+  }
+
+  @Test
+  public void testCloseReleasesEveryThreadsPage() throws Exception {
+
+    GeoChannelFileBuffer buffer = GeoChannelFileBuffer.open(write(new byte[100]));
+
+    buffer.readInt32At(10);
+
+    Thread other = new Thread(() -> buffer.readInt32At(20));
+    other.start();
+    other.join();
+
+    int free = GeoPagePool.INSTANCE.size();
+
+    buffer.close();
+
+    // the other thread's page goes back too, not just this one's.
+    assertEquals(free + 2, GeoPagePool.INSTANCE.size());
+
+  }
+
+}
@@ -0,0 +1,116 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.zrz.jgdb.GeoIndexFile.IndexEntry;
+
+public class GeoIndexFileTest {
+
+  /**
+   * a sparse index of 5000 rows, with only blocks 1 and 3 present. row i has
+   * offset 1000 + i, except every 10th which is deleted.
+   */
+
+  private static GeoIndexFile sparse() throws IOException {
+
+    int[] present = { 1, 3 };
+
+    ByteBuffer buf = ByteBuffer.allocate(16 + present.length * 1024 * 4 + 16 + 1).order(ByteOrder.LITTLE_ENDIAN);
+
+    buf.putInt(3).putInt(present.length).putInt(5000).putInt(4);
+
+    for (int block : present) {
+      for (int i = 0; i < 1024; ++i) {
+        int id = block * 1024 + i;
+        buf.putInt(id % 10 == 0 ? 0 : 1000 + id);
+      }
+    }
+
+    buf.putInt(1).putInt(5).putInt(present.length).putInt(1);
+    buf.put((byte) 0b01010);
+
+    return new GeoIndexFile(new GeoByteBuffer(buf.array()));
+
+  }
+
+  @Test
+  public void testSparseLookups() throws IOException {
+
+    GeoIndexFile index = sparse();
+
+    assertEquals(-1, index.getFeatureOffset(5));
+    assertEquals(1000 + 1025, index.getFeatureOffset(1025));
+    assertEquals(-1, index.getFeatureOffset(1030));
+    assertEquals(-1, index.getFeatureOffset(2500));
+    assertEquals(1000 + 3073, index.getFeatureOffset(3073));
+    assertEquals(1000 + 4095, index.getFeatureOffset(4095));
+    assertEquals(-1, index.getFeatureOffset(4999));
+
+  }
+
+  @Test
+  public void testSparseScan() throws IOException {
+
+    GeoIndexFile index = sparse();
+
+    List<Long> expected = new ArrayList<>();
+
+    for (int block : new int[] { 1, 3 }) {
+      for (int i = 0; i < 1024; ++i) {
+        int id = block * 1024 + i;
+        if (id % 10 != 0) {
+          expected.add((long) id + 1);
+        }
+      }
+    }
+
+    List<Long> iterated = new ArrayList<>();
+
+    for (IndexEntry entry : index) {
+      assertEquals(1000 + entry.getObjectId() - 1, entry.getOffset());
+      iterated.add(entry.getObjectId());
+    }
+
+    List<Long> scanned = new ArrayList<>();
+    index.scan(id -> true, (id, offset) -> scanned.add(id));
+
+    assertEquals(expected, iterated);
+    assertEquals(expected, scanned);
+
+  }
+
+  @Test
+  public void testPhysicalOrder() throws IOException {
+
+    // rows stored in reverse, with offsets beyond 4GB.
+    long[] offsets = new long[3000];
+    for (int i = 0; i < offsets.length; ++i) {
+      offsets[i] = (1L << 33) + (offsets.length - i) * 100L;
+    }
+
+    GeoIndexFile index = GeoIndexFile.recover(offsets);
+
+    assertEquals(offsets[0], index.getFeatureOffset(0));
+    assertEquals(offsets[2999], index.getFeatureOffset(2999));
+    assertEquals(-1, index.getFeatureOffset(3000));
+
+    GeoIndexFile.PhysicalOrder order = index.getPhysicalOrder();
+
+    assertEquals(offsets.length, order.ids.length);
+
+    for (int i = 0; i < order.ids.length; ++i) {
+      assertEquals(offsets.length - i, order.ids[i]);
+      assertEquals(offsets[order.ids[i] - 1], order.offsets[i]);
+    }
+
+  }
+
+}
@@ -0,0 +1,204 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class GeoMappedFileBufferTest {
+
+  private static File write(byte[] data) throws IOException {
+    File file = File.createTempFile("jgdb", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  private static byte[] sequence(int len) {
+    byte[] data = new byte[len];
+    for (int i = 0; i < len; ++i) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+  @Test
+  public void testReadsAcrossChunks() throws IOException {
+
+    byte[] data = sequence(100);
+
+    try (RandomAccessFile raf = new RandomAccessFile(write(data), "r")) {
+
+      // 16 byte chunks.
+      GeoMappedFileBuffer buffer = new GeoMappedFileBuffer(raf, data.length, 4);
+
+      for (long pos = 0; pos + 8 <= data.length; ++pos) {
+
+        buffer.seek(pos);
+
+        int b = (int) pos;
+        int expected = (data[b] & 0xFF) | (data[b + 1] & 0xFF) << 8 | (data[b + 2] & 0xFF) << 16 | (data[b + 3] & 0xFF) << 24;
+
+        assertEquals(expected, buffer.readInt32());
+        assertEquals(pos + 4, buffer.getFilePointer());
+
+      }
+
+      byte[] all = new byte[data.length - 3];
+      buffer.seek(3);
+      buffer.readFully(all);
+      assertEquals(data.length, buffer.getFilePointer());
+
+      for (int i = 0; i < all.length; ++i) {
+        assertEquals(data[i + 3], all[i]);
+      }
+
+    }
+
+  }
+
+  @Test
+  public void testVarIntAcrossChunks() throws IOException {
+
+    // a 3 byte varuint starting 2 bytes before the first chunk boundary.
+    byte[] data = new byte[32];
+    data[14] = (byte) 0x81;
+    data[15] = (byte) 0x82;
+    data[16] = (byte) 0x03;
+
+    try (RandomAccessFile raf = new RandomAccessFile(write(data), "r")) {
+      GeoMappedFileBuffer buffer = new GeoMappedFileBuffer(raf, data.length, 4);
+      buffer.seek(14);
+      assertEquals(1 | (2 << 7) | (3 << 14), buffer.readVarUInt64());
+      assertEquals(17, buffer.getFilePointer());
+    }
+
+  }
+
+  @Test
+  public void testSingleChunk() throws IOException {
+
+    byte[] data = sequence(10);
+
+    try (RandomAccessFile raf = new RandomAccessFile(write(data), "r")) {
+      GeoMappedFileBuffer buffer = new GeoMappedFileBuffer(raf, data.length);
+      byte[] all = new byte[data.length];
+      buffer.readFully(all);
+      assertArrayEquals(data, all);
+      assertEquals(0, buffer.remainingBytes());
+    }
+
+  }
+
+  @Test
+  public void testPositionalReads() throws IOException {
+
+    byte[] data = sequence(64);
+    data[14] = (byte) 0x81;
+    data[15] = (byte) 0x82;
+    data[16] = (byte) 0x03;
+
+    try (RandomAccessFile raf = new RandomAccessFile(write(data), "r")) {
+
+      GeoMappedFileBuffer buffer = new GeoMappedFileBuffer(raf, data.length, 4);
+
+      // a varuint length across two chunks.
+      assertEquals(17 + (1 | (2 << 7) | (3 << 14)), buffer.skipBlobAt(14));
+      assertEquals(0x23222120, buffer.readInt32At(32));
+
+      // positional reads don't move the cursor.
+      assertEquals(0, buffer.getFilePointer());
+
+      // within a chunk, and crossing into the next.
+      for (int start : new int[] { 33, 31 }) {
+        GeoBuffer slice = buffer.sliceAt(start, 10);
+        assertEquals(10, slice.remainingBytes());
+        assertEquals(data[start + 1] & 0xFF, slice.readUInt8At(1));
+        slice.skipBytes(2);
+        assertEquals(data[start + 2], (byte) slice.readUInt8());
+        assertEquals(3, slice.getFilePointer());
+      }
+
+    }
+
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testSliceOutOfRange() throws IOException {
+
+    byte[] data = sequence(64);
+
+    try (RandomAccessFile raf = new RandomAccessFile(write(data), "r")) {
+      // would wrap around if the end was worked out as an int.
+      new GeoMappedFileBuffer(raf, data.length, 4).sliceAt(3, Integer.MAX_VALUE);
+    }
+
+  }
+
+  @Test
+  public void testSequentialRowsAndPrefetch() throws IOException {
+
+    byte[] data = sequence(64 * 1024);
+
+    try (RandomAccessFile raf = new RandomAccessFile(write(data), "r")) {
+
+      // 4KB chunks, so the readahead spans several of them.
+      GeoMappedFileBuffer buffer = new GeoMappedFileBuffer(raf, data.length, 12);
+
+      // enough sequential rows to start reading ahead.
+      for (int pos = 0; pos + 20 <= data.length; pos += 20) {
+        buffer.accessed(pos, 16);
+        assertEquals(data[pos + 15] & 0xFF, buffer.readUInt8At(pos + 15));
+      }
+
+      buffer.prefetch(100, Long.MAX_VALUE);
+      buffer.prefetch(data.length, 10);
+
+      // must not race with any background loads still running.
+      buffer.close();
+
+    }
+
+  }
+
+  @Test
+  public void testClosedBufferFailsReads() throws IOException {
+
+    byte[] data = sequence(64);
+
+    RandomAccessFile raf = new RandomAccessFile(write(data), "r");
+
+    GeoMappedFileBuffer buffer = new GeoMappedFileBuffer(raf, data.length, 4);
+    GeoBuffer dup = buffer.duplicate();
+
+    buffer.close();
+
+    // the duplicate keeps the mapping open.
+    assertEquals(0x17161514, dup.readInt32At(20));
+    assertClosed(() -> buffer.readInt32At(20));
+
+    dup.close();
+
+    // unmapped now, so these must not touch it.
+    assertClosed(() -> dup.readInt32At(20));
+    assertClosed(() -> dup.sliceAt(0, 4));
+    assertClosed(() -> buffer.duplicate());
+
+  }
+
+  private static void assertClosed(Runnable read) {
+    try {
+      read.run();
+      fail("read from a closed buffer");
+    } catch (IllegalStateException ex) {
+      // expected.
+    }
+  }
+
+}
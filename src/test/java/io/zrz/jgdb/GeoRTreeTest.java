@@ -0,0 +1,129 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.zrz.jgdb.shape.Envelope;
+
+public class GeoRTreeTest {
+
+  private static final int COUNT = 5000;
+
+  private static double[] boxes() {
+    Random random = new Random(42);
+    double[] items = new double[COUNT * 4];
+    for (int i = 0; i < COUNT; ++i) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      items[i * 4] = x;
+      items[i * 4 + 1] = y;
+      items[i * 4 + 2] = x + random.nextDouble() * 5;
+      items[i * 4 + 3] = y + random.nextDouble() * 5;
+    }
+    return items;
+  }
+
+  private static int[] ids() {
+    int[] ids = new int[COUNT];
+    for (int i = 0; i < COUNT; ++i) {
+      ids[i] = i + 1;
+    }
+    return ids;
+  }
+
+  private static int[] scan(double[] items, Envelope env) {
+    return Arrays.stream(ids())
+        .filter(id -> items[(id - 1) * 4] <= env.getMaxX() && items[(id - 1) * 4 + 1] <= env.getMaxY()
+            && items[(id - 1) * 4 + 2] >= env.getMinX() && items[(id - 1) * 4 + 3] >= env.getMinY())
+        .toArray();
+  }
+
+  private static int[] sorted(int[] values) {
+    Arrays.sort(values);
+    return values;
+  }
+
+  private static void checkSearch(GeoRTree tree, double[] items) {
+    Random random = new Random(7);
+    for (int i = 0; i < 100; ++i) {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      Envelope env = new Envelope(x, y, x + random.nextDouble() * 100, y + random.nextDouble() * 100);
+      assertArrayEquals(scan(items, env), sorted(tree.search(env)));
+    }
+  }
+
+  @Test
+  public void testSearch() {
+    double[] items = boxes();
+    GeoRTree tree = GeoRTree.pack(items.clone(), ids(), COUNT);
+    assertEquals(COUNT, tree.size());
+    checkSearch(tree, items);
+  }
+
+  @Test
+  public void testNearest() {
+
+    double[] items = boxes();
+    GeoRTree tree = GeoRTree.pack(items.clone(), ids(), COUNT);
+
+    double x = 500, y = 500;
+    int[] nearest = tree.nearest(x, y, 10);
+
+    // the distances to the boxes of every item, in order.
+    double[] distances = new double[COUNT];
+    for (int i = 0; i < COUNT; ++i) {
+      double dx = Math.max(0, Math.max(items[i * 4] - x, x - items[i * 4 + 2]));
+      double dy = Math.max(0, Math.max(items[i * 4 + 1] - y, y - items[i * 4 + 3]));
+      distances[i] = dx * dx + dy * dy;
+    }
+
+    double[] expected = distances.clone();
+    Arrays.sort(expected);
+
+    assertEquals(10, nearest.length);
+    for (int i = 0; i < nearest.length; ++i) {
+      assertEquals(expected[i], distances[nearest[i] - 1], 0);
+    }
+
+  }
+
+  @Test
+  public void testEmptyAndSingle() {
+    assertEquals(0, GeoRTree.pack(new double[0], new int[0], 0).search(new Envelope(0, 0, 1, 1)).length);
+    GeoRTree one = GeoRTree.pack(new double[] { 1, 1, 2, 2 }, new int[] { 9 }, 1);
+    assertArrayEquals(new int[] { 9 }, one.search(new Envelope(0, 0, 1, 1)));
+    assertArrayEquals(new int[] { 9 }, one.nearest(10, 10, 3));
+  }
+
+  @Test
+  public void testSidecar() throws IOException {
+
+    double[] items = boxes();
+    GeoRTree tree = GeoRTree.pack(items.clone(), ids(), COUNT);
+
+    File file = File.createTempFile("jgdb", ".rtree");
+    file.deleteOnExit();
+
+    tree.save(file.toPath(), 1234, 5678);
+
+    GeoRTree loaded = GeoRTree.load(file.toPath(), 1234, 5678);
+    assertEquals(COUNT, loaded.size());
+    checkSearch(loaded, items);
+    assertArrayEquals(tree.nearest(100, 100, 5), loaded.nearest(100, 100, 5));
+
+    // built from a different version of the table.
+    assertNull(GeoRTree.load(file.toPath(), 1234, 5679));
+    assertNull(GeoRTree.load(file.toPath(), 1235, 5678));
+
+  }
+
+}
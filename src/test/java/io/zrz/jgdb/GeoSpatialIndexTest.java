@@ -0,0 +1,85 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import io.zrz.jgdb.shape.Envelope;
+
+public class GeoSpatialIndexTest {
+
+  /**
+   * a single page index of the given (sorted) keys.
+   */
+
+  private static byte[] index(long[] keys, int[] oids) {
+
+    int maxPerPage = (GeoBTree.PAGE_SIZE - 12) / (4 + 8);
+
+    ByteBuffer buf = ByteBuffer.allocate(GeoBTree.PAGE_SIZE + 22).order(ByteOrder.LITTLE_ENDIAN);
+
+    buf.putInt(4, keys.length);
+
+    for (int i = 0; i < keys.length; ++i) {
+      buf.putInt(12 + i * 4, oids[i]);
+      buf.putLong(12 + maxPerPage * 4 + i * 8, keys[i]);
+    }
+
+    int trailer = buf.capacity() - 22;
+    buf.put(trailer, (byte) 8);
+    buf.putInt(trailer + 2, 1);
+    buf.putInt(trailer + 6, 1);
+    buf.putInt(trailer + 10, keys.length);
+
+    return buf.array();
+
+  }
+
+  @Test
+  public void testCandidates() {
+
+    double[] grid = { 10, 100, 1000 };
+
+    // cells offset by 2^29 cells of the first level, which is 2^29 * 10 / 100
+    // (53687091.2) cells of the second and 5368709.12 of the third.
+    long[][] cells = {
+        // feature 1 in the cell at (5, 5), 2 at (-5, 15), and 3 over (5..15, 5).
+        { GeoSpatialIndex.key(0, 536870911, 536870913), 2 },
+        { GeoSpatialIndex.key(0, 536870912, 536870912), 1 },
+        { GeoSpatialIndex.key(0, 536870912, 536870912), 3 },
+        { GeoSpatialIndex.key(0, 536870913, 536870912), 3 },
+        // 4 is larger, so in the cell at (50, 50) of the second level.
+        { GeoSpatialIndex.key(1, 53687091, 53687091), 4 },
+        // and 5 at (-500, -500) of the third.
+        { GeoSpatialIndex.key(2, 5368708, 5368708), 5 },
+    };
+
+    Arrays.sort(cells, (a, b) -> Long.compareUnsigned(a[0], b[0]));
+
+    long[] keys = new long[cells.length];
+    int[] oids = new int[cells.length];
+
+    for (int i = 0; i < cells.length; ++i) {
+      keys[i] = cells[i][0];
+      oids[i] = (int) cells[i][1];
+    }
+
+    GeoSpatialIndex spx = new GeoSpatialIndex(new GeoByteBuffer(index(keys, oids)), grid);
+
+    assertEquals(53687091, spx.cell(1, 50));
+    assertEquals(5368708, spx.cell(2, -500));
+
+    assertArrayEquals(new int[] { 1, 3, 4 }, spx.candidates(new Envelope(1, 1, 2, 2)));
+    assertArrayEquals(new int[] { 3, 4 }, spx.candidates(new Envelope(12, 1, 13, 2)));
+    assertArrayEquals(new int[] { 1, 2, 3, 4 }, spx.candidates(new Envelope(-9, 1, 9, 19)));
+    assertArrayEquals(new int[] { 5 }, spx.candidates(new Envelope(-600, -600, -400, -400)));
+    assertArrayEquals(new int[0], spx.candidates(new Envelope(2000, 2000, 3000, 3000)));
+
+  }
+
+}
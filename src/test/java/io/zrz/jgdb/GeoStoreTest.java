@@ -0,0 +1,120 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class GeoStoreTest {
+
+  private static byte[] data(int len) {
+    byte[] data = new byte[len];
+    for (int i = 0; i < len; ++i) {
+      data[i] = (byte) (i * 7);
+    }
+    return data;
+  }
+
+  /**
+   * counts the reads made of the wrapped source.
+   */
+
+  private static class CountingSource implements GeoRangeSource {
+
+    private final GeoRangeSource source;
+    private final AtomicInteger reads = new AtomicInteger();
+
+    CountingSource(GeoRangeSource source) {
+      this.source = source;
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+      return source.list();
+    }
+
+    @Override
+    public long length(String name) throws IOException {
+      return source.length(name);
+    }
+
+    @Override
+    public void read(String name, long pos, ByteBuffer dst) throws IOException {
+      reads.incrementAndGet();
+      source.read(name, pos, dst);
+    }
+
+  }
+
+  @Test
+  public void testCachingStore() throws IOException {
+
+    Path dir = Files.createTempDirectory("jgdb");
+    byte[] data = data(10000);
+    Path file = Files.write(dir.resolve("a00000001.gdbtable"), data);
+    file.toFile().deleteOnExit();
+    dir.toFile().deleteOnExit();
+
+    CountingSource source = new CountingSource(GeoRangeSource.local(dir));
+
+    // 1KB blocks, at most 4 of them.
+    try (GeoCachingStore store = new GeoCachingStore(source, 10, 4)) {
+
+      assertTrue(store.exists("a00000001.gdbtable"));
+      assertFalse(store.exists("a00000001.gdbtablx"));
+      assertEquals(Arrays.asList("a00000001.gdbtable"), store.list());
+
+      GeoBuffer buffer = store.open("a00000001.gdbtable");
+
+      // an int over the end of the first block.
+      int expected = (data[1022] & 0xFF) | (data[1023] & 0xFF) << 8 | (data[1024] & 0xFF) << 16 | (data[1025] & 0xFF) << 24;
+      assertEquals(expected, buffer.readInt32At(1022));
+      assertEquals(1, source.reads.get());
+
+      byte[] read = new byte[3000];
+      buffer.readFullyAt(500, read);
+      assertArrayEquals(Arrays.copyOfRange(data, 500, 3500), read);
+      assertEquals(4, source.reads.get());
+
+      // all cached.
+      buffer.duplicate().readFullyAt(500, read);
+      assertEquals(4, source.reads.get());
+
+      // the first block has been evicted by now.
+      buffer.readFullyAt(9000, new byte[1000]);
+      buffer.readUInt8At(0);
+      assertEquals(7, source.reads.get());
+
+      assertEquals(data[data.length - 1] & 0xFF, buffer.readUInt8At(data.length - 1));
+
+    }
+
+  }
+
+  @Test(expected = NoSuchFileException.class)
+  public void testMemoryStore() throws IOException {
+
+    byte[] data = data(100);
+
+    GeoMemoryStore store = new GeoMemoryStore().put("gdb", new byte[] { 5 }).put("a00000001.gdbtable", data);
+
+    assertEquals(Arrays.asList("a00000001.gdbtable", "gdb"), store.list());
+    assertEquals(5, (int) FileGDBFactory.getVersion(store).get());
+    assertEquals(data[99], (byte) store.open("a00000001.gdbtable").readUInt8At(99));
+
+    store.open("a00000002.gdbtable");
+
+  }
+
+}
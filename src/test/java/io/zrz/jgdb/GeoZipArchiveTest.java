@@ -0,0 +1,96 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class GeoZipArchiveTest {
+
+  private static byte[] data(int len) {
+    byte[] data = new byte[len];
+    for (int i = 0; i < len; ++i) {
+      data[i] = (byte) (i % 251);
+    }
+    return data;
+  }
+
+  private static void stored(ZipOutputStream out, String name, byte[] data) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(data.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(data);
+    out.closeEntry();
+  }
+
+  private static void deflated(ZipOutputStream out, String name, byte[] data) throws IOException {
+    out.putNextEntry(new ZipEntry(name));
+    out.write(data);
+    out.closeEntry();
+  }
+
+  private static byte[] read(GeoBuffer buffer, int len) {
+    byte[] data = new byte[len];
+    buffer.readFullyAt(0, data);
+    buffer.close();
+    return data;
+  }
+
+  @Test
+  public void testStoredAndDeflatedEntries() throws IOException {
+
+    Path zip = Files.createTempFile("jgdb", ".gdb.zip");
+    zip.toFile().deleteOnExit();
+
+    byte[] stored = data(10000);
+    byte[] deflated = data(70000);
+
+    // doesn't compress, so is inflated from several blocks of input.
+    byte[] random = new byte[200000];
+    new Random(7).nextBytes(random);
+
+    try (OutputStream os = Files.newOutputStream(zip); ZipOutputStream out = new ZipOutputStream(os)) {
+      deflated(out, "x.gdb/a00000001.gdbtablx", deflated);
+      stored(out, "x.gdb/a00000001.gdbtable", stored);
+      deflated(out, "x.gdb/a00000002.gdbtablx", random);
+    }
+
+    try (FileSystem fs = FileSystems.newFileSystem(zip, (ClassLoader) null)) {
+
+      Path dir = fs.getPath("/x.gdb");
+      GeoZipArchive archive = GeoZipArchive.of(dir);
+
+      assertArrayEquals(stored, read(archive.open(dir.resolve("a00000001.gdbtable")), stored.length));
+      assertArrayEquals(deflated, read(archive.open(dir.resolve("a00000001.gdbtablx")), deflated.length));
+      assertArrayEquals(random, read(archive.open(dir.resolve("a00000002.gdbtablx")), random.length));
+
+      try {
+        archive.open(dir.resolve("a00000002.gdbtable"));
+        throw new AssertionError("expected missing entry");
+      } catch (NoSuchFileException ex) {
+        // expected.
+      }
+
+    }
+
+    assertNull(GeoZipArchive.of(zip));
+
+  }
+
+}
@@ -0,0 +1,54 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RowPlanTest {
+
+  private static GeoField field(String name, FieldType type) {
+    return GeoField.builder().name(name).type(type).build();
+  }
+
+  @Test
+  public void testFixedPositions() {
+
+    RowPlan plan = new RowPlan(Arrays.asList(
+        field("A", IntFieldType.builder().nullable(false).build()),
+        field("B", DoubleFieldType.builder().nullable(false).build()),
+        field("C", StringFieldType.builder().nullable(true).build()),
+        field("D", ShortFieldType.builder().nullable(false).build()),
+        field("E", ShortFieldType.builder().nullable(true).build())));
+
+    // one byte of null flags, for C and E.
+    assertEquals(10, plan.firstField(9));
+    assertEquals(1, plan.fixedPosition(0));
+    assertEquals(5, plan.fixedPosition(1));
+    assertEquals(13, plan.fixedPosition(2));
+    assertEquals(-1, plan.fixedPosition(3));
+    assertEquals(-1, plan.fixedPosition(4));
+
+  }
+
+  @Test
+  public void testWalk() {
+
+    RowPlan plan = new RowPlan(Arrays.asList(
+        field("C", StringFieldType.builder().nullable(true).build()),
+        field("E", ShortFieldType.builder().nullable(true).build())));
+
+    // C is "abc", E is null.
+    GeoBuffer row = new GeoByteBuffer(new byte[] { 0b10, 3, 'a', 'b', 'c' });
+
+    assertFalse(plan.isNull(row, 0, 0));
+    assertTrue(plan.isNull(row, 0, 1));
+    assertEquals(5, plan.skip(row, plan.firstField(0), 0));
+    assertEquals(7, plan.skip(row, 5, 1));
+
+  }
+
+}
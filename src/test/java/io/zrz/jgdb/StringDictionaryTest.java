@@ -0,0 +1,91 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class StringDictionaryTest {
+
+  /**
+   * a buffer of the given strings, each stored as a varuint length and the
+   * bytes, with the position of each in offsets.
+   */
+
+  private static GeoBuffer strings(long[] offsets, String... values) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < values.length; ++i) {
+      offsets[i] = out.size();
+      byte[] data = values[i].getBytes(StandardCharsets.UTF_8);
+      int len = data.length;
+      while (len >= 0x80) {
+        out.write((len & 0x7F) | 0x80);
+        len >>>= 7;
+      }
+      out.write(len);
+      out.write(data, 0, data.length);
+    }
+    return new GeoByteBuffer(out.toByteArray());
+  }
+
+  @Test
+  public void testSharesValues() {
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; ++i) {
+      sb.append('x');
+    }
+    String lengthy = sb.toString();
+
+    long[] offsets = new long[5];
+    GeoBuffer file = strings(offsets, "OPEN", "CLOSED", "OPEN", "", lengthy);
+
+    StringDictionary dictionary = new StringDictionary();
+
+    String open = dictionary.read(file, offsets[0]);
+
+    assertEquals("OPEN", open);
+    assertEquals("CLOSED", dictionary.read(file, offsets[1]));
+    assertSame(open, dictionary.read(file, offsets[2]));
+    assertNull(dictionary.read(file, offsets[3]));
+
+    // too long to keep.
+    assertEquals(lengthy, dictionary.read(file, offsets[4]));
+    assertNotSame(dictionary.read(file, offsets[4]), dictionary.read(file, offsets[4]));
+
+    assertEquals(2, dictionary.size());
+
+  }
+
+  @Test
+  public void testTurnsOff() {
+
+    int count = StringDictionary.MAX_ENTRIES * 8;
+
+    String[] values = new String[count];
+    for (int i = 0; i < count; ++i) {
+      values[i] = "V" + i;
+    }
+
+    long[] offsets = new long[count];
+    GeoBuffer file = strings(offsets, values);
+
+    StringDictionary dictionary = new StringDictionary();
+
+    for (int i = 0; i < count; ++i) {
+      assertEquals(values[i], dictionary.read(file, offsets[i]));
+      assertTrue(dictionary.size() <= StringDictionary.MAX_ENTRIES);
+    }
+
+    assertFalse(dictionary.isEnabled());
+
+  }
+
+}
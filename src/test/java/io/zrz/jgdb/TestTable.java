@@ -0,0 +1,154 @@
+package io.zrz.jgdb;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a small .gdbtable with a field of each simple type, for testing row
+ * decoding without a geodatabase on disk.
+ *
+ * The fields after OBJECTID are SHORT_F, INT_F, FLOAT_F, DOUBLE_F, NAME,
+ * DATE_F, BLOB, GUID and DOC, and all but INT_F and DOUBLE_F are nullable.
+ */
+
+class TestTable {
+
+  static final String[] NAMES = { "SHORT_F", "INT_F", "FLOAT_F", "DOUBLE_F", "NAME", "DATE_F", "BLOB", "GUID", "DOC" };
+
+  private final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+  private final List<Long> offsets = new ArrayList<>();
+  private final byte[] fields = fields();
+
+  private static void utf16(ByteArrayOutputStream out, String str) {
+    out.write(str.length());
+    out.write(str.getBytes(StandardCharsets.UTF_16LE), 0, str.length() * 2);
+  }
+
+  private static void field(ByteArrayOutputStream out, String name, int type, int... rest) {
+    utf16(out, name);
+    utf16(out, "");
+    out.write(type);
+    for (int b : rest) {
+      out.write(b);
+    }
+  }
+
+  private static byte[] fields() {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    // version 4, no geometry.
+    out.write(new byte[] { 4, 0, 0, 0, 0, 0, 0, 0 }, 0, 8);
+    out.write(NAMES.length + 1);
+    out.write(0);
+
+    field(out, "OBJECTID", 6, 4, 2);
+    field(out, "SHORT_F", 0, 2, 1, 0);
+    field(out, "INT_F", 1, 4, 0, 0);
+    field(out, "FLOAT_F", 2, 4, 1, 0);
+    field(out, "DOUBLE_F", 3, 8, 0, 0);
+    // max length 50, nullable, no default.
+    field(out, "NAME", 4, 50, 0, 0, 0, 1, 0);
+    field(out, "DATE_F", 5, 8, 1, 0);
+    field(out, "BLOB", 8, 0, 1);
+    field(out, "GUID", 11, 38, 1);
+    field(out, "DOC", 12, 0, 1);
+
+    return out.toByteArray();
+
+  }
+
+  private static void varint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Adds a row, with a value (or null) for each field after OBJECTID: a Short,
+   * Integer, Float, Double, String, Double (days since 1899-12-30), byte[],
+   * byte[16] and String.
+   */
+
+  TestTable row(Object... values) {
+
+    ByteBuffer data = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+    // the null flags of the 7 nullable fields.
+    int flags = 0;
+    int bit = 0;
+
+    for (int i = 0; i < values.length; ++i) {
+      if (i == 1 || i == 3) {
+        continue;
+      }
+      if (values[i] == null) {
+        flags |= 1 << bit;
+      }
+      ++bit;
+    }
+
+    data.put((byte) flags);
+
+    for (Object value : values) {
+      if (value instanceof Short) {
+        data.putShort((Short) value);
+      } else if (value instanceof Integer) {
+        data.putInt((Integer) value);
+      } else if (value instanceof Float) {
+        data.putFloat((Float) value);
+      } else if (value instanceof Double) {
+        data.putDouble((Double) value);
+      } else if (value instanceof byte[] && ((byte[]) value).length == 16) {
+        data.put((byte[]) value);
+      } else if (value != null) {
+        byte[] bytes = (value instanceof String) ? ((String) value).getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+        ByteArrayOutputStream len = new ByteArrayOutputStream();
+        varint(len, bytes.length);
+        data.put(len.toByteArray()).put(bytes);
+      }
+    }
+
+    offsets.add(40L + 4 + fields.length + rows.size());
+
+    ByteBuffer len = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(data.position());
+    rows.write(len.array(), 0, 4);
+    rows.write(data.array(), 0, data.position());
+
+    return this;
+
+  }
+
+  /**
+   * The offset of each row added, in order.
+   */
+
+  long[] offsets() {
+    return offsets.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  byte[] build() {
+
+    int size = 40 + 4 + fields.length + rows.size();
+
+    ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+    buf.putInt(3).putInt(offsets.size()).put(new byte[16]);
+    buf.putLong(size).putLong(40);
+    buf.putInt(fields.length).put(fields).put(rows.toByteArray());
+
+    return buf.array();
+
+  }
+
+  FileGDBTable open() throws java.io.IOException {
+    return new FileGDBTable(new GeoByteBuffer(build()));
+  }
+
+}
@@ -0,0 +1,49 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class Utf8SliceTest {
+
+  /**
+   * a slice of the given string which hasn't been decoded.
+   */
+
+  private static Utf8Slice slice(String value) {
+    byte[] data = ("xx" + value).getBytes(StandardCharsets.UTF_8);
+    return new Utf8Slice(new GeoByteBuffer(data), 2, data.length - 2);
+  }
+
+  @Test
+  public void testContentEquals() {
+
+    for (String value : new String[] { "", "abc", "caf\u00e9", "\u65e5\u672c", "a\ud83d\ude00b" }) {
+      Utf8Slice slice = slice(value);
+      assertTrue(value, slice.contentEquals(value));
+      assertTrue(value, slice.startsWith(value));
+      assertFalse(value, slice.contentEquals(value + "x"));
+      assertFalse(value, slice.startsWith(value + "\u00e9"));
+      assertEquals(Utf8Slice.of(value), slice);
+      assertEquals(Utf8Slice.of(value).hashCode(), slice.hashCode());
+      assertEquals(value, slice.toString());
+      assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), slice.getBytes());
+    }
+
+    Utf8Slice slice = slice("caf\u00e9 au lait");
+
+    assertTrue(slice.startsWith("caf\u00e9"));
+    assertTrue(slice.startsWith(Utf8Slice.of("caf")));
+    assertFalse(slice.startsWith("cafe"));
+    assertFalse(slice.contentEquals("caf\u00e9"));
+    assertFalse(slice.equals("caf\u00e9 au lait"));
+    assertEquals(12, slice.length());
+
+  }
+
+}
@@ -0,0 +1,112 @@
+package io.zrz.jgdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VarIntsTest {
+
+  /**
+   * the signed varint encoding used for coordinates: 6 bits and the sign in the
+   * first byte, 7 bits in each following one.
+   */
+
+  private static void encode(ByteArrayOutputStream out, long value) {
+    boolean negative = value < 0;
+    long v = Math.abs(value);
+    int first = (int) (v & 0x3F) | (negative ? 0x40 : 0);
+    v >>>= 6;
+    out.write(first | (v != 0 ? 0x80 : 0));
+    while (v != 0) {
+      int b = (int) (v & 0x7F);
+      v >>>= 7;
+      out.write(b | (v != 0 ? 0x80 : 0));
+    }
+  }
+
+  private static long[] values(int count) {
+    Random random = new Random(42);
+    long[] values = new long[count];
+    for (int i = 0; i < count; ++i) {
+      // mostly small deltas, with some up to 62 bits which need the slow path.
+      int bits = (i % 10 == 0) ? 62 : random.nextInt(30);
+      values[i] = (random.nextLong() >> (63 - bits));
+    }
+    return values;
+  }
+
+  private static byte[] encode(long[] values) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (long value : values) {
+      encode(out, value);
+    }
+    return out.toByteArray();
+  }
+
+  private static void check(GeoBuffer buffer, long[] expected, byte[] data) {
+
+    long[] scalar = new long[expected.length];
+    for (int i = 0; i < expected.length; ++i) {
+      scalar[i] = buffer.readVarInt64();
+    }
+    assertArrayEquals(expected, scalar);
+    assertEquals(data.length, buffer.getFilePointer());
+
+    buffer.seek(0);
+
+    long[] bulk = new long[expected.length];
+    buffer.readVarInt64s(bulk, expected.length);
+    assertArrayEquals(expected, bulk);
+    assertEquals(data.length, buffer.getFilePointer());
+
+  }
+
+  @Test
+  public void testByteBuffer() {
+    long[] values = values(1000);
+    byte[] data = encode(values);
+    check(new GeoByteBuffer(data), values, data);
+  }
+
+  @Test
+  public void testMappedAcrossChunks() throws IOException {
+
+    long[] values = values(1000);
+    byte[] data = encode(values);
+
+    File file = File.createTempFile("jgdb", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), data);
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      check(new GeoMappedFileBuffer(raf, data.length, 6), values, data);
+    }
+
+  }
+
+  @Test
+  public void testUnsignedAt() {
+
+    // 300 as a varuint (0xAC 0x02) after a byte, then the largest 5 byte one.
+    GeoByteBuffer buffer = new GeoByteBuffer(new byte[] { 9, (byte) 0xAC, 0x02, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F });
+
+    long packed = VarInts.unsignedAt(buffer, 1);
+    assertEquals(300, VarInts.valueOf(packed));
+    assertEquals(2, VarInts.sizeOf(packed));
+    assertEquals(303, buffer.skipBlobAt(1));
+
+    packed = VarInts.unsignedAt(buffer, 3);
+    assertEquals((1L << 35) - 1, VarInts.valueOf(packed));
+    assertEquals(5, VarInts.sizeOf(packed));
+
+  }
+
+}